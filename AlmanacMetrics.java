@@ -0,0 +1,35 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)AlmanacMetrics.java 1.00 20261018
+*
+* AlmanacMetrics: Told how long the almanac's loads and calls take, how
+* its caches fare and which rows it rejects. Installed with
+* Metrics.install(); implementations are called on whatever thread did
+* the work, so must be thread safe, and should return quickly.
+*
+* The names passed are constants such as "DailyData.fetch", so an
+* implementation may key its tallies on them without bounding their
+* number; a reason is the first words of an exception's message.
+*
+* Implementations:
+*   LatencyHistograms - counts and latency histograms in memory
+*   JfrMetrics        - JDK Flight Recorder events
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+
+public interface AlmanacMetrics
+	{
+	/** A load of what finished, reading rows, after nanos */
+	public void loaded(String what, int rows, long nanos);
+
+	/** A call of what took nanos */
+	public void timed(String what, long nanos);
+
+	/** A lookup in cache found the answer there (hit) or not */
+	public void cached(String cache, boolean hit);
+
+	/** A row or line read by what was rejected for reason */
+	public void rejected(String what, String reason);
+	}
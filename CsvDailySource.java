@@ -0,0 +1,137 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)CsvDailySource.java 1.00 20261018
+*
+* CsvDailySource: Reads the DailyData history from a comma separated
+* export of the [DATA$] sheet: one line per day with the same 29 columns
+* in the same order, yyyymmdd first and the headlines last. Lines that
+* do not start with a digit (a header row, comments) are skipped, and
+* the headlines may themselves contain commas.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 fetchAfter
+* 20261018 reports rejected rows to Metrics
+*******************************************************/
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import com.shanebow.util.SBLog;
+
+public final class CsvDailySource
+	implements DailyDataSource
+	{
+	public static final String MODULE="CsvDailySource";
+	private final File fFile;
+
+	public CsvDailySource(File aFile) { fFile = aFile; }
+	public CsvDailySource(String aFilespec) { this(new File(aFilespec)); }
+
+	public DailyColumns loadAll() throws Exception
+		{
+		return read(0);
+		}
+
+	public DailyColumns fetchAfter( int yyyymmdd ) throws Exception
+		{
+		return read(yyyymmdd);
+		}
+
+	/** Reads the rows dated after yyyymmdd up to the first unusable one */
+	private DailyColumns read( int yyyymmdd ) throws Exception
+		{
+		String after = String.valueOf(yyyymmdd);
+		DailyColumns.Builder data = new DailyColumns.Builder((yyyymmdd == 0) ? 500 : 16);
+		BufferedReader in = open();
+		try
+			{
+			double[] values = new double[DailyData.NUM_COLUMNS];
+			int[] fields = new int[DailyColumns.NUM_FIELDS];
+			String line;
+			while ((line = in.readLine()) != null )
+				{
+				if ( !isData(line) || line.substring(0,8).compareTo(after) <= 0 )
+					continue;
+				try { readRow( line, values, fields, data ); }
+				catch (Exception ex)
+					{
+					SBLog.write ( MODULE + ".**" + ex.getMessage());
+					Metrics.rejected(MODULE, ex);
+					break;
+					}
+				}
+			}
+		finally { in.close(); }
+		return data.build();
+		}
+
+	public DailyColumns fetch( String yyyymmdd ) throws Exception
+		{
+		BufferedReader in = open();
+		try
+			{
+			String line;
+			while ((line = in.readLine()) != null )
+				if ( isData(line) && line.startsWith(yyyymmdd))
+					return one(line);
+			}
+		finally { in.close(); }
+		return null;
+		}
+
+	public DailyColumns last() throws Exception
+		{
+		String latest = null;
+		BufferedReader in = open();
+		try
+			{
+			String line;
+			while ((line = in.readLine()) != null )
+				if ( isData(line)
+				&& (latest == null || line.substring(0,8).compareTo(latest.substring(0,8)) > 0))
+					latest = line;
+			}
+		finally { in.close(); }
+		return (latest == null) ? null : one(latest);
+		}
+
+	private BufferedReader open() throws Exception
+		{
+		return new BufferedReader(new InputStreamReader(new FileInputStream(fFile), "UTF-8"));
+		}
+
+	private static boolean isData(String line)
+		{
+		return line.length() >= 8 && Character.isDigit(line.charAt(0));
+		}
+
+	private DailyColumns one( String line ) throws Exception
+		{
+		DailyColumns.Builder it = new DailyColumns.Builder(1);
+		readRow( line, new double[DailyData.NUM_COLUMNS],
+		         new int[DailyColumns.NUM_FIELDS], it );
+		return it.build();
+		}
+
+	private static int readRow( String line, double[] values, int[] fields,
+	                            DailyColumns.Builder into ) throws Exception
+		{
+		String[] pieces = line.split(",", DailyData.NUM_COLUMNS);
+		for ( int c = 2; c < DailyData.NUM_COLUMNS; c++ )
+			{
+			String piece = (c <= pieces.length) ? pieces[c-1].trim() : "";
+			values[c] = piece.isEmpty() ? 0 : Double.parseDouble(piece);
+			}
+		String notes = (pieces.length == DailyData.NUM_COLUMNS)
+		             ? unquote(pieces[DailyData.NUM_COLUMNS - 1].trim()) : null;
+		return DailyData.appendRow( pieces[0].trim(), values, notes, fields, into );
+		}
+
+	private static String unquote(String s)
+		{
+		if ( s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"' )
+			return s.substring(1, s.length() - 1).replace("\"\"", "\"");
+		return s;
+		}
+	}
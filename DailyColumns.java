@@ -0,0 +1,388 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DailyColumns.java 1.00 20261018
+*
+* DailyColumns: Column oriented storage for the DailyData history.
+*
+* Rather than one object per day, each field (CASH...VNASD) is kept in
+* its own int[] indexed by row, the dates in a long[], and the headlines
+* in a single byte blob that is only turned into a String when a caller
+* asks for it. A scan over one field is then a sequential walk over one
+* primitive array:
+*
+*		DailyColumns dc = DailyData.columns();
+*		int[] vix = dc.column(DailyData.VIX);
+*		for ( int i = 0; i < vix.length; i++ )
+*			// do something with vix[i]
+*
+* Rows are kept in date order, so the row number is the same index used
+* by DailyData.day(int), and a date is found by binary search over the
+* int[] of yyyymmdd values rather than by walking the rows:
+*
+*		int[] rows = dc.range(20130101, 20131231); // {first, end exclusive}
+*		int row = dc.indexOf(20130308);           // < 0 if not a data day
+*
+* A DailyColumns is an immutable snapshot: its rows, min/max and index
+* never change once it is built, so any number of threads may read it
+* without locking. Loading and appending go through a Builder, and an
+* append produces a new, larger snapshot that shares the arrays of the
+* old one - the old snapshot simply never looks past its own size.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 sorted date index: indexOf, range, binary search slice
+* 20261018 carries its own min/max, raw access for DailyDataSource
+* 20261018 addAll to append newer rows
+* 20261018 immutable snapshots built by DailyColumns.Builder
+* 20261018 bug fix: a new max never updated min, so row 0 was never a min
+* 20261018 rows() copies a range of rows
+* 20261018 bug fix: range() to Integer.MAX_VALUE was always empty
+* 20261018 bug fix: a Builder over 0 bulk rows could not grow
+*******************************************************/
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public final class DailyColumns
+	{
+	public static final int NUM_FIELDS = 25;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String EMPTY_STRING = "";
+	private static final int MIN_ROWS = 16;            // least capacity of a Builder
+	private static final int MIN_NOTE_BYTES = 64 * MIN_ROWS;
+
+	private final long[]  fTimes;
+	private final int[]   fYmds;      // fYmds[row] = yyyymmdd, ascending
+	private final int[][] fFields;
+	private final byte[]  fNoteBytes; // null if no row has headlines
+	private final int[]   fNoteEnds;  // fNoteEnds[row] = end offset in fNoteBytes
+	private final int     fSize;
+	private final int[]   fMin;
+	private final int[]   fMax;
+	private final Builder fBuilder;   // that built this, to append in place
+
+	private DailyColumns(Builder b)
+		{
+		fTimes = b.fTimes;
+		fYmds = b.fYmds;
+		fFields = b.fFields.clone();
+		fNoteBytes = b.fNoteBytes;
+		fNoteEnds = b.fNoteEnds;
+		fSize = b.fSize;
+		fMin = b.fMin.clone();
+		fMax = b.fMax.clone();
+		fBuilder = b;
+		}
+
+	/**
+	* Accumulates rows for a new DailyColumns. Not thread safe: one thread
+	* builds, then publishes the result of build().
+	*/
+	static final class Builder
+		{
+		private long[]  fTimes;
+		private int[]   fYmds;
+		private final int[][] fFields = new int[NUM_FIELDS][];
+		private byte[]  fNoteBytes = null; // allocated with the first headline
+		private int[]   fNoteEnds;
+		private int     fNoteLength = 0;
+		private int     fSize = 0;
+		private boolean fSorted = true;
+		private final int[] fMin = new int[NUM_FIELDS];
+		private final int[] fMax = new int[NUM_FIELDS];
+
+		Builder(int aCapacity)
+			{
+			int capacity = Math.max(aCapacity, MIN_ROWS);
+			fTimes = new long[capacity];
+			fYmds = new int[capacity];
+			fNoteEnds = new int[capacity];
+			for ( int f = 0; f < NUM_FIELDS; f++ )
+				{
+				fFields[f] = new int[capacity];
+				fMin[f] = Integer.MAX_VALUE;
+				fMax[f] = Integer.MIN_VALUE;
+				}
+			}
+
+		/**
+		* Takes over columns that were read in bulk, such as from a snapshot
+		* file, without copying. They must hold aSize rows in date order.
+		*/
+		Builder(int aSize, long[] aTimes, int[] aYmds, int[][] aFields,
+		        int[] aNoteEnds, byte[] aNotes, int[] aMin, int[] aMax)
+			{
+			fSize = aSize;
+			fTimes = aTimes;
+			fYmds = aYmds;
+			System.arraycopy(aFields, 0, fFields, 0, NUM_FIELDS);
+			fNoteEnds = aNoteEnds;
+			fNoteBytes = aNotes;
+			fNoteLength = (aSize == 0) ? 0 : aNoteEnds[aSize - 1];
+			System.arraycopy(aMin, 0, fMin, 0, NUM_FIELDS);
+			System.arraycopy(aMax, 0, fMax, 0, NUM_FIELDS);
+			}
+
+		/** A builder holding a private copy of data's rows */
+		Builder(DailyColumns data)
+			{
+			this(data.fSize);
+			addAll(data);
+			}
+
+		int size() { return fSize; }
+
+		/**
+		* Appends a row and returns its row number. The values array is
+		* copied, so the caller may reuse it for the next row.
+		*/
+		int add(long aTime, int aYmd, int[] aValues, String aNotes)
+			{
+			if ( fSize == fTimes.length )
+				grow();
+			int row = fSize;
+			if ( row > 0 && aYmd < fYmds[row - 1] )
+				fSorted = false;
+			fTimes[row] = aTime;
+			fYmds[row] = aYmd;
+			for ( int f = 0; f < NUM_FIELDS; f++ )
+				{
+				int value = aValues[f];
+				fFields[f][row] = value;
+				if ( value > fMax[f] ) fMax[f] = value;
+				if ( value < fMin[f] ) fMin[f] = value; // not else: the first row sets both
+				}
+			if (aNotes != null && !aNotes.isEmpty())
+				{
+				byte[] bytes = aNotes.getBytes(UTF8);
+				int need = fNoteLength + bytes.length;
+				if ( fNoteBytes == null )
+					fNoteBytes = new byte[Math.max(need, Math.max(MIN_NOTE_BYTES, 64 * fTimes.length))];
+				else if ( need > fNoteBytes.length )
+					fNoteBytes = Arrays.copyOf(fNoteBytes,
+					                 Math.max(need, Math.max(MIN_NOTE_BYTES, 2 * fNoteBytes.length)));
+				System.arraycopy(bytes, 0, fNoteBytes, fNoteLength, bytes.length);
+				fNoteLength = need;
+				}
+			fNoteEnds[row] = fNoteLength;
+			return fSize++;
+			}
+
+		/**
+		* Appends the rows of more that are dated after the last row so far.
+		* @return the number of rows appended
+		*/
+		int addAll(DailyColumns more)
+			{
+			int[] values = new int[NUM_FIELDS];
+			int added = 0;
+			for ( int row = 0; row < more.fSize; row++ )
+				{
+				if ( fSize > 0 && more.fYmds[row] <= fYmds[fSize - 1] )
+					continue;
+				add(more, row, values);
+				++added;
+				}
+			return added;
+			}
+
+		/**
+		* Appends a copy of row of from, using values as scratch space
+		* @return the new row number
+		*/
+		int add(DailyColumns from, int row, int[] values)
+			{
+			for ( int f = 0; f < NUM_FIELDS; f++ )
+				values[f] = from.fFields[f][row];
+			return add(from.fTimes[row], from.fYmds[row], values, from.notes(row));
+			}
+
+		/** Doubles the capacity, which may be 0 for columns taken over in bulk */
+		private void grow()
+			{
+			int capacity = Math.max(MIN_ROWS, 2 * fTimes.length);
+			fTimes = Arrays.copyOf(fTimes, capacity);
+			fYmds = Arrays.copyOf(fYmds, capacity);
+			fNoteEnds = Arrays.copyOf(fNoteEnds, capacity);
+			for ( int f = 0; f < NUM_FIELDS; f++ )
+				fFields[f] = Arrays.copyOf(fFields[f], capacity);
+			}
+
+		/**
+		* Puts the rows in date order if they were not added that way. Called
+		* once the load is complete: the index methods depend on it.
+		*/
+		void sort()
+			{
+			if ( fSorted )
+				return;
+			long[] keys = new long[fSize]; // yyyymmdd in the high word, row in the low
+			for ( int row = 0; row < fSize; row++ )
+				keys[row] = ((long)fYmds[row] << 32) | row;
+			Arrays.sort(keys);
+
+			long[] times = new long[fTimes.length];
+			int[]  ymds = new int[fYmds.length];
+			int[][] fields = new int[NUM_FIELDS][fTimes.length];
+			int[] noteEnds = new int[fNoteEnds.length];
+			byte[] noteBytes = (fNoteBytes == null) ? null : new byte[fNoteBytes.length];
+			int noteLength = 0;
+			for ( int to = 0; to < fSize; to++ )
+				{
+				int from = (int)keys[to];
+				times[to] = fTimes[from];
+				ymds[to] = fYmds[from];
+				for ( int f = 0; f < NUM_FIELDS; f++ )
+					fields[f][to] = fFields[f][from];
+				int start = (from == 0) ? 0 : fNoteEnds[from - 1];
+				int length = fNoteEnds[from] - start;
+				if ( length > 0 )
+					System.arraycopy(fNoteBytes, start, noteBytes, noteLength, length);
+				noteLength += length;
+				noteEnds[to] = noteLength;
+				}
+			fTimes = times;
+			fYmds = ymds;
+			System.arraycopy(fields, 0, fFields, 0, NUM_FIELDS);
+			fNoteEnds = noteEnds;
+			fNoteBytes = noteBytes;
+			fSorted = true;
+			}
+
+		/** @return a snapshot of the rows so far, sorting them if need be */
+		DailyColumns build()
+			{
+			sort();
+			return new DailyColumns(this);
+			}
+		}
+
+	/**
+	* @return a builder for appending to this snapshot. If this is the
+	* latest snapshot of its builder, that builder is reused so the rows
+	* are not copied: snapshots already handed out are unaffected since
+	* the new rows lie beyond their size. Appends to one history must be
+	* serialized by the caller, as DailyData.refresh() does.
+	*/
+	Builder appender()
+		{
+		return (fBuilder.fSize == fSize) ? fBuilder : new Builder(this);
+		}
+
+	public int  size()                     { return fSize; }
+	public long time(int row)              { return fTimes[check(row)]; }
+	public int  yyyymmdd(int row)          { return fYmds[check(row)]; }
+	public int  first()                    { return (fSize == 0) ? 0 : fYmds[0]; }
+	public int  last()                     { return (fSize == 0) ? 0 : fYmds[fSize - 1]; }
+	public int  get(int row, byte field)   { return fFields[field][check(row)]; }
+	public int  getMin(byte field)         { return fMin[field]; }
+	public int  getMax(byte field)         { return fMax[field]; }
+
+	/** @return the semicolon separated headlines for row, never null */
+	public String notes(int row)
+		{
+		int end = fNoteEnds[check(row)];
+		int start = (row == 0) ? 0 : fNoteEnds[row - 1];
+		return (end == start) ? EMPTY_STRING
+		                      : new String(fNoteBytes, start, end - start, UTF8);
+		}
+
+	/** @return a copy of the dates, one per row, as SBDate times */
+	public long[] times() { return Arrays.copyOf(fTimes, fSize); }
+
+	/** @return a copy of every row's value for field */
+	public int[] column(byte field) { return Arrays.copyOf(fFields[field], fSize); }
+
+	/**
+	* @return a copy of field's values for the rows whose time falls in
+	* the inclusive range [fromTime, toTime]
+	*/
+	public int[] slice(byte field, long fromTime, long toTime)
+		{
+		int from = lowerBound(fTimes, fromTime);
+		int to = Math.max(from, lowerBound(fTimes, toTime + 1));
+		return Arrays.copyOfRange(fFields[field], from, to);
+		}
+
+	/**
+	* @return the row for yyyymmdd, or (-(insertion point) - 1) if there
+	* is no data for that date, following Arrays.binarySearch
+	*/
+	public int indexOf(int yyyymmdd)
+		{
+		return Arrays.binarySearch(fYmds, 0, fSize, yyyymmdd);
+		}
+
+	/** @return the row whose time is exactly aTime, or a negative number */
+	public int indexOfTime(long aTime)
+		{
+		return Arrays.binarySearch(fTimes, 0, fSize, aTime);
+		}
+
+	/**
+	* @return {first, end} where rows first (inclusive) through end
+	* (exclusive) hold the data for dates in [fromYmd, toYmd]. The
+	* range is empty (first == end) when no data falls in the dates.
+	*/
+	public int[] range(int fromYmd, int toYmd)
+		{
+		int from = lowerBound(fYmds, fromYmd);
+		int to = (toYmd == Integer.MAX_VALUE) ? fSize // toYmd + 1 would overflow
+		       : Math.max(from, lowerBound(fYmds, toYmd + 1));
+		return new int[] { from, to };
+		}
+
+	/** @return a new snapshot holding a copy of rows first through end - 1 */
+	public DailyColumns rows(int first, int end)
+		{
+		if ( first < 0 || end > fSize || first > end )
+			throw new IndexOutOfBoundsException("rows " + first + "-" + end + " of " + fSize);
+		Builder copy = new Builder(end - first);
+		int[] values = new int[NUM_FIELDS];
+		for ( int row = first; row < end; row++ )
+			copy.add(this, row, values);
+		return copy.build();
+		}
+
+	/** @return the first row whose yyyymmdd is not less than key */
+	private int lowerBound(int[] a, int key)
+		{
+		int lo = 0, hi = fSize;
+		while ( lo < hi )
+			{
+			int mid = (lo + hi) >>> 1;
+			if ( a[mid] < key ) lo = mid + 1;
+			else hi = mid;
+			}
+		return lo;
+		}
+
+	/** @return the first row whose time is not less than key */
+	private int lowerBound(long[] a, long key)
+		{
+		int lo = 0, hi = fSize;
+		while ( lo < hi )
+			{
+			int mid = (lo + hi) >>> 1;
+			if ( a[mid] < key ) lo = mid + 1;
+			else hi = mid;
+			}
+		return lo;
+		}
+
+	/**
+	* The backing array for field, which may be longer than size(). For
+	* scans inside the package that cannot afford a copy - never modify.
+	*/
+	int[] rawColumn(byte field) { return fFields[field]; }
+	long[] rawTimes()           { return fTimes; }
+	int[]  rawYmds()            { return fYmds; }
+	int[]  rawNoteEnds()        { return fNoteEnds; }
+	byte[] rawNotes()           { return fNoteBytes; }
+
+	private int check(int row)
+		{
+		if ( row < 0 || row >= fSize )
+			throw new IndexOutOfBoundsException("row " + row + " of " + fSize);
+		return row;
+		}
+	}
@@ -1,7 +1,7 @@
 package com.wormtrader.almanac;
 
-import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.shanebow.util.SBDate;
 import com.shanebow.util.SBFormat;
@@ -38,201 +38,366 @@ public final class DailyData
 
 	public static final String[] LABELS = new String[25];
 
-	private int[] fields = new int[25];
-	private static int[] min = new int[25];
-	private static int[] max = new int[25];
-	private final long   m_time;  // date/time seconds ala SBDate
-	private final String m_notes; // financial headlines
+	/** Columns in a source row: yyyymmdd, 27 numbers, then the headlines */
+	static final int NUM_COLUMNS = 29;
+
+	private final DailyColumns fStore; // the columns this day is a view of
+	private final int          fRow;   // this day's row in fStore
 
 	private static final String EMPTY_STRING = "";
-	private static final String DRIVER = "sun.jdbc.odbc.JdbcOdbcDriver";
-	private static final String URL = "jdbc:odbc:MarketData";
-	private static final String USERNAME = "";
-	private static final String PASSWORD = "";
 
-	private static Vector<DailyData> m_data = null;
-	static public Vector<DailyData> loadAll()
+	// The loaded history is an immutable DailyColumns snapshot, replaced
+	// whole by loadAll() and refresh(). Readers take the current snapshot
+	// once and work from it, so they never lock and never see a partial
+	// load; writers are serialized on the class.
+	private static volatile DailyDataSource m_source = new JdbcDailySource();
+	private static volatile DailyColumns m_data = null;
+	private static volatile Vector<DailyData> m_days = null; // views handed out by allDates()
+	private static final List<DailyDataListener> m_listeners
+	                                 = new CopyOnWriteArrayList<DailyDataListener>();
+
+	/**
+	* Installs the source used by loadAll(), and by fetch() and last() for
+	* dates that are not loaded. The default is the ODBC MarketData sheet.
+	*/
+	public static void setSource(DailyDataSource aSource) { m_source = aSource; }
+	public static DailyDataSource getSource() { return m_source; }
+
+	public static void addListener(DailyDataListener l) { m_listeners.add(l); }
+	public static void removeListener(DailyDataListener l) { m_listeners.remove(l); }
+
+	static public synchronized Vector<DailyData> loadAll()
 		{
 		SBLog.write ( MODULE + "." + "loadAll()" );
-m_data = new Vector<DailyData>(500);
-		for ( int i = 0; i < min.length; i++ )
-			{
-			min[i] = Integer.MAX_VALUE;
-			max[i] = Integer.MIN_VALUE;
-			}
-		try
-			{
-			Class.forName(DRIVER);
-			Connection conn = DriverManager.getConnection(URL, USERNAME, PASSWORD);
-			String sql = "SELECT * FROM [DATA$]";
-			Statement statement = conn.createStatement();
-			ResultSet rs = statement.executeQuery(sql);
-			ResultSetMetaData metaData = rs.getMetaData();
-			int numberOfColumns =  metaData.getColumnCount();
-	//		for ( int j=1; j <= numberOfColumns; j++ )
-	//			SBLog.write ( MODULE + "." + j + ") " + metaData.getColumnLabel(j));
-			while(rs.next())
-				{
-				try { m_data.add( new DailyData( rs )); }
-				catch (Exception ex)
-					{
-					SBLog.write ( MODULE + ".**" + ex.getMessage());
-					break;
-					}
-				}
-			statement.close();
-			conn.close();
-			}
+		long start = Metrics.start();
+		DailyColumns data;
+		try { data = m_source.loadAll(); }
 		catch (Exception e)
 			{
 			SBLog.write ( MODULE + "." + "Exception: " + e.getMessage());
+			data = new DailyColumns.Builder(0).build();
 			}
+		m_data = data;
+		Metrics.loaded(MODULE + ".loadAll", data.size(), start);
 		for ( byte f = MTI; f <= YEN; f++ )
 			SBLog.format ( "%s.[%d] %d - %d\n", MODULE, f, getMin(f), getMax(f));
 		int n = numDates(); // m_data.size();
 		SBLog.format( "%s ready to go: %d dates %s - %s\n",
-					MODULE, n, m_data.get(0).yyyymmdd(), m_data.get(n-1).yyyymmdd());
-		return m_data;
+					MODULE, n, data.first(), data.last());
+		for ( DailyDataListener l : m_listeners )
+			l.dataLoaded(data);
+		return allDates();
+		}
+
+	/**
+	* Picks up the days added to the source since the last load, rather
+	* than reloading everything: only rows dated after the last loaded
+	* day are read, and they are appended to the loaded history. Does a
+	* full loadAll() if nothing is loaded yet.
+	* @return the number of days appended
+	*/
+	static public synchronized int refresh()
+		{
+		DailyColumns data = m_data;
+		if ( data == null )
+			return loadAll().size();
+		int lastYmd = data.last();
+		long start = Metrics.start();
+		DailyColumns more;
+		try { more = m_source.fetchAfter(lastYmd); }
+		catch (Exception e)
+			{
+			SBLog.format( "%s.refresh(%d): %s\n", MODULE, lastYmd, e.getMessage());
+			return 0;
+			}
+		int first = data.size();
+		DailyColumns.Builder appender = data.appender();
+		int added = appender.addAll(more);
+		Metrics.loaded(MODULE + ".refresh", added, start);
+		if ( added == 0 )
+			return 0;
+		data = appender.build();
+		m_data = data;
+		SBLog.format( "%s.refresh: %d new dates %d - %d\n",
+		              MODULE, added, data.yyyymmdd(first), data.last());
+		for ( DailyDataListener l : m_listeners )
+			l.daysAppended(data, first, first + added);
+		return added;
+		}
+
+	/**
+	* @return the loaded history in column form, loading it if necessary.
+	* Prefer this to allDates() for scanning a field across many days, and
+	* to numDates()/day(int) when the rows must all come from one load:
+	* the snapshot returned never changes, even if a reload is under way.
+	*/
+	public static DailyColumns columns()
+		{
+		DailyColumns data = m_data;
+		if ( data == null )
+			{
+			loadAll();
+			data = m_data;
+			}
+		return data;
 		}
 
 	public static Vector<DailyData> allDates() // { return m_data; }
-	{ return (m_data == null) ? loadAll() : m_data; }
+		{
+		DailyColumns data = columns();
+		Vector<DailyData> days = m_days;
+		if ( days == null || !viewsOf(days, data))
+			{
+			int n = data.size();
+			days = new Vector<DailyData>(n);
+			for ( int i = 0; i < n; i++ )
+				days.add( new DailyData( data, i ));
+			m_days = days;
+			}
+		return days;
+		}
+	private static boolean viewsOf( Vector<DailyData> days, DailyColumns data )
+		{
+		return days.isEmpty() ? data.size() == 0
+		                      : days.get(0).fStore == data && days.size() == data.size();
+		}
 	public static int numDates() { return m_data.size(); }
-	public static DailyData day(int i) { return m_data.get(i); }
+	public static DailyData day(int i) { return new DailyData( m_data, i ); }
 	public static DailyData day(long time)
 		{
-		for ( DailyData d : m_data )
-			if (d.m_time == time) return d;
-		return null;
+		long start = Metrics.start();
+		DailyColumns data = m_data;
+		int row = data.indexOfTime(time);
+		Metrics.timed(MODULE + ".day", start);
+		return (row < 0) ? null : new DailyData( data, row );
+		}
+
+	/**
+	* @return the row of the loaded data for yyyymmdd, suitable for day(int),
+	* or a negative number if that date was not loaded
+	*/
+	public static int indexOf(int yyyymmdd) { return columns().indexOf(yyyymmdd); }
+
+	/**
+	* @return {first, end}: the rows (end exclusive) of the loaded data
+	* that fall between the two dates inclusive
+	*/
+	public static int[] range(int fromYmd, int toYmd) { return columns().range(fromYmd, toYmd); }
+
+	public static int getMin(byte field) { return (m_data == null) ? 0 : m_data.getMin(field); }
+	public static int getMax(byte field) { return (m_data == null) ? 0 : m_data.getMax(field); }
+
+	private DailyData( DailyColumns aStore, int aRow )
+		{
+		fStore = aStore;
+		fRow = aRow;
 		}
-	public static int getMin(byte field) { return min[field]; }
-	public static int getMax(byte field) { return max[field]; }
 
-	private DailyData( ResultSet rs ) throws Exception
+	/**
+	* Scales one source row into fields and appends it to into. The values
+	* are indexed by source column as in the DATA$ sheet: values[2] is the
+	* cash through values[28], the NASDAQ volume; values[0..1] are unused.
+	* @return the new row number
+	* @throws Exception if the row is not usable
+	*/
+	static int appendRow( String yyyymmdd, double[] values, String notes,
+	                      int[] fields, DailyColumns.Builder into ) throws Exception
 		{
-		String yyyymmdd = rs.getString(1);
 		if ((yyyymmdd == null) || (yyyymmdd.length() < 8))
 			throw new Exception( "Invalid date: '" + yyyymmdd + "'" ); 
-		m_time = SBDate.toTime(yyyymmdd);
-		if ( m_time > SBDate.today )
-			throw new Exception( "Future date: '" + yyyymmdd + "'"  + m_time ); 
+		long time = SBDate.toTime(yyyymmdd);
+		if ( time > SBDate.today )
+			throw new Exception( "Future date: '" + yyyymmdd + "'"  + time ); 
+		int ymd = Integer.parseInt(yyyymmdd.substring(0, 8));
 
-		int cash =  (int)(rs.getDouble(2) * 100);
+		int cash =  (int)(values[2] * 100);
 		if ( cash == 0 ) // record not filled in yet
 			throw new Exception( "Blank cash for: '" + yyyymmdd + "'");
-		set( CASH, cash );
-		set( GAIN, (int)(rs.getDouble(3) * 100));
-
-		int cg  = (rs.getByte(4) & 0x000f); cg <<= 4; // cgprc
-		    cg |= (rs.getByte(5) & 0x000f); cg <<= 4; // cgrt
-		    cg |= (rs.getByte(6) & 0x000f);           // cgbr;
-		fields[CG] = cg;
-		set( MTI,   (int)(rs.getDouble(7) * 100));
-		set( VIX,   (int)(rs.getDouble(8) * 100));
-		set( TY,    (int)(rs.getDouble(9) * 1000));
-		set( EURO,  (int)(rs.getDouble(10) * 100));
-		set( YEN,   (int)(rs.getDouble(11) * 100));
-		set( INDU,  (int)(rs.getDouble(12) * 100));
-		set( INDP,  (int)(rs.getDouble(13) * 100));
-		set( NCMP,  (int)(rs.getDouble(14) * 100));
-		set( R2000, (int)(rs.getDouble(15) * 100));
-		set( SPX,   (int)(rs.getDouble(16) * 100));
-		set( ANYSE, rs.getInt(17));
-		set( DNYSE, rs.getInt(18));
-		set( UNYSE, rs.getInt(19));
-		set( HNYSE, rs.getInt(20));
-		set( LNYSE, rs.getInt(21));
-		set( VNYSE, (int)(rs.getLong(22) / 1000));
-		set( ANASD, rs.getInt(23));
-		set( DNASD, rs.getInt(24));
-		set( UNASD, rs.getInt(25));
-		set( HNASD, rs.getInt(26));
-		set( LNASD, rs.getInt(27));
-		set( VNASD, (int)(rs.getLong(28) / 1000));
-		String notes = rs.getString(29);
-		m_notes = ( notes == null ) ? EMPTY_STRING : notes;
-		}
-
-	private void  set(byte field, int value)
-		{
-		fields[field] = value;
-		if ( value > max[field] ) max[field] = value;
-		else if ( value < min[field] ) min[field] = value;
-		}
-	public int    get(byte field) { return fields[field]; }
-	public long   getTime()       { return m_time; }
-	public String getNews()       { return m_notes; }
-	public String yyyymmdd()      { return SBDate.yyyymmdd(m_time); }
-	public String getDollars(byte field) { return SBFormat.toDollarString(fields[field]); }
+		fields[CASH] = cash;
+		fields[GAIN] = (int)(values[3] * 100);
+
+		int cg  = ((int)values[4] & 0x000f); cg <<= 4; // cgprc
+		    cg |= ((int)values[5] & 0x000f); cg <<= 4; // cgrt
+		    cg |= ((int)values[6] & 0x000f);           // cgbr;
+		fields[CG]    = cg;
+		fields[MTI]   = (int)(values[7] * 100);
+		fields[VIX]   = (int)(values[8] * 100);
+		fields[TY]    = (int)(values[9] * 1000);
+		fields[EURO]  = (int)(values[10] * 100);
+		fields[YEN]   = (int)(values[11] * 100);
+		fields[INDU]  = (int)(values[12] * 100);
+		fields[INDP]  = (int)(values[13] * 100);
+		fields[NCMP]  = (int)(values[14] * 100);
+		fields[R2000] = (int)(values[15] * 100);
+		fields[SPX]   = (int)(values[16] * 100);
+		fields[ANYSE] = (int)values[17];
+		fields[DNYSE] = (int)values[18];
+		fields[UNYSE] = (int)values[19];
+		fields[HNYSE] = (int)values[20];
+		fields[LNYSE] = (int)values[21];
+		fields[VNYSE] = (int)((long)values[22] / 1000);
+		fields[ANASD] = (int)values[23];
+		fields[DNASD] = (int)values[24];
+		fields[UNASD] = (int)values[25];
+		fields[HNASD] = (int)values[26];
+		fields[LNASD] = (int)values[27];
+		fields[VNASD] = (int)((long)values[28] / 1000);
+		return into.add( time, ymd, fields, ( notes == null ) ? EMPTY_STRING : notes );
+		}
+
+	public int    get(byte field) { return fStore.get(fRow, field); }
+	public double get(DailyIndicator indicator) { return indicator.get(ymd()); }
+	public int    ymd()           { return fStore.yyyymmdd(fRow); }
+	public long   getTime()       { return fStore.time(fRow); }
+	public String getNews()       { return fStore.notes(fRow); }
+	public String yyyymmdd()      { return SBDate.yyyymmdd(getTime()); }
+	public String getDollars(byte field) { return SBFormat.toDollarString(get(field)); }
 
 	public String toString()
 		{
-		return SBDate.mmddyy(m_time)
+		return SBDate.mmddyy(getTime())
 				+ " " + SBFormat.toDollarString(get(INDU))
 				+ "(" + SBFormat.toDollarString(get(INDP)) + ")"
 				+ " " + SBFormat.toDollarString(get(SPX))
 				+ " " + SBFormat.toDollarString(get(NCMP))
 				+ " " + SBFormat.toDollarString(get(CASH))
 				+ " " + SBFormat.toDollarString(get(GAIN))
-				+ " " + m_notes;
+				+ " " + getNews();
 		}
 
+	/**
+	* @return the data for yyyymmdd, or null if there is none. When the
+	* history is loaded and covers the date, it is answered from memory;
+	* only later dates go to the source.
+	*/
 	static public DailyData fetch( String yyyymmdd )
 		{
+		long start = Metrics.start();
+		DailyData it = fetch0(yyyymmdd);
+		Metrics.timed(MODULE + ".fetch", start);
+		return it;
+		}
+
+	private static DailyData fetch0( String yyyymmdd )
+		{
 //		SBLog.format( "%s.fetch(%s)...\n", MODULE, yyyymmdd );
-		DailyData it = null;
-		try
+		DailyColumns data = m_data;
+		if ( data != null && data.size() > 0 )
 			{
-			Class.forName(DRIVER);
-			Connection conn = DriverManager.getConnection(URL, USERNAME, PASSWORD);
-			String sql = "SELECT * FROM [DATA$] where yyyymmdd='" + yyyymmdd + "'";
-			Statement statement = conn.createStatement();
-			ResultSet rs = statement.executeQuery(sql);
-			if ( rs.next())
+			int ymd = parseYmd(yyyymmdd);
+			if ( ymd > 0 && ymd <= data.last())
 				{
-				try { it = new DailyData( rs ); }
-				catch (Exception ex) { SBLog.format( "%s.fetch(%s): %s", MODULE, yyyymmdd, ex.getMessage()); }
+				int row = data.indexOf(ymd);
+				Metrics.cached(MODULE, true);
+				return (row < 0) ? null : new DailyData( data, row );
 				}
-			statement.close();
-			conn.close();
+			}
+		Metrics.cached(MODULE, false);
+		try
+			{
+			DailyColumns one = m_source.fetch(yyyymmdd);
+			return (one == null) ? null : new DailyData( one, 0 );
 			}
 		catch (Exception e) { SBLog.format( "%s.fetch(%s): %s", MODULE, yyyymmdd, e.getMessage()); }
-		return it;
+		return null;
 		}
 
-	static public DailyData last()
+	/**
+	* @return the days from the first date through the last that have data,
+	* in date order: from memory when the loaded history covers them, else
+	* in one read from the source
+	*/
+	static public Vector<DailyData> fetchRange( String fromYmd, String toYmd )
 		{
-//		SBLog.format( "%s.fetch(%s)...\n", MODULE, yyyymmdd );
-		DailyData it = null;
-		String yyyymmdd = "";
-		try
+		long start = Metrics.start();
+		int from = parseYmd(fromYmd), to = parseYmd(toYmd);
+		Vector<DailyData> days = new Vector<DailyData>();
+		DailyColumns data = m_data;
+		if ( data != null && data.size() > 0 && to <= data.last())
 			{
-			Class.forName(DRIVER);
-			Connection conn = DriverManager.getConnection(URL, USERNAME, PASSWORD);
-			String sql = "SELECT yyyymmdd FROM [DATA$] ORDER BY yyyymmdd DESC";
-			Statement statement = conn.createStatement();
-			ResultSet rs = statement.executeQuery(sql);
-			if ( rs.next())
-yyyymmdd = rs.getString(1);
-/*********
-				{
-				try { yyyymmdd = rs.getString(1); }
-				catch (Exception ex) { SBLog.format( "%s.last(%s): %s", MODULE, yyyymmdd, ex.getMessage()); }
-				}
-*********/
-			statement.close();
-			sql = "SELECT * FROM [DATA$] where yyyymmdd='" + yyyymmdd + "'";
-			statement = conn.createStatement();
-			rs = statement.executeQuery(sql);
-			if ( rs.next())
+			Metrics.cached(MODULE, true);
+			int[] rows = data.range(from, to);
+			for ( int row = rows[0]; row < rows[1]; row++ )
+				days.add( new DailyData( data, row ));
+			}
+		else
+			{
+			Metrics.cached(MODULE, false);
+			try { addAll(days, m_source.fetchRange(from, to)); }
+			catch (Exception e) { SBLog.format( "%s.fetchRange(%s, %s): %s", MODULE, fromYmd, toYmd, e.getMessage()); }
+			}
+		Metrics.timed(MODULE + ".fetchRange", start);
+		return days;
+		}
+
+	/**
+	* @return the days among dates (yyyymmdd) that have data, in date order,
+	* reading any that are not loaded from the source in one go
+	*/
+	static public Vector<DailyData> fetchAll( Collection<String> dates )
+		{
+		long start = Metrics.start();
+		Vector<DailyData> days = new Vector<DailyData>(dates.size());
+		DailyColumns data = m_data;
+		List<String> unloaded = new ArrayList<String>();
+		for ( String yyyymmdd : new TreeSet<String>(dates))
+			{
+			int ymd = parseYmd(yyyymmdd);
+			if ( data == null || data.size() == 0 || ymd > data.last())
+				unloaded.add(yyyymmdd);
+			else
 				{
-				try { it = new DailyData( rs ); }
-				catch (Exception ex) { SBLog.format( "%s.last(%s): %s", MODULE, yyyymmdd, ex.getMessage()); }
+				int row = data.indexOf(ymd);
+				if ( row >= 0 )
+					days.add( new DailyData( data, row ));
 				}
-			statement.close();
-			conn.close();
 			}
-		catch (Exception e) { SBLog.format( "%s.last(%s): %s", MODULE, yyyymmdd, e.getMessage()); }
+		Metrics.cached(MODULE, unloaded.isEmpty());
+		if ( !unloaded.isEmpty())
+			{
+			try { addAll(days, m_source.fetchAll(unloaded)); }
+			catch (Exception e) { SBLog.format( "%s.fetchAll: %s", MODULE, e.getMessage()); }
+			}
+		Metrics.timed(MODULE + ".fetchAll", start);
+		return days;
+		}
+
+	private static void addAll( Vector<DailyData> days, DailyColumns more )
+		{
+		for ( int row = 0; row < more.size(); row++ )
+			days.add( new DailyData( more, row ));
+		}
+
+	/** @return the most recent day: the last one loaded, if loaded */
+	static public DailyData last()
+		{
+		long start = Metrics.start();
+		DailyData it = last0();
+		Metrics.timed(MODULE + ".last", start);
 		return it;
 		}
+
+	private static DailyData last0()
+		{
+		DailyColumns data = m_data;
+		if ( data != null && data.size() > 0 )
+			{
+			Metrics.cached(MODULE, true);
+			return new DailyData( data, data.size() - 1 );
+			}
+		Metrics.cached(MODULE, false);
+		try
+			{
+			DailyColumns one = m_source.last();
+			return (one == null) ? null : new DailyData( one, 0 );
+			}
+		catch (Exception e) { SBLog.format( "%s.last(): %s", MODULE, e.getMessage()); }
+		return null;
+		}
+
+	private static int parseYmd( String yyyymmdd )
+		{
+		try { return Integer.parseInt(yyyymmdd.trim().substring(0, 8)); }
+		catch (Exception e) { return -1; }
+		}
 	}
@@ -0,0 +1,21 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DailyDataListener.java 1.00 20261018
+*
+* DailyDataListener: Told when the DailyData history changes, either by
+* a full loadAll() or by refresh() appending the days that are new since
+* the last load. Called on the thread doing the load: implementations
+* that touch Swing components must hand off to the EDT.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+
+public interface DailyDataListener
+	{
+	/** The whole history was (re)loaded into data */
+	public void dataLoaded(DailyColumns data);
+
+	/** Rows first through end - 1 of data are newly appended days */
+	public void daysAppended(DailyColumns data, int first, int end);
+	}
@@ -0,0 +1,75 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DailyDataSource.java 1.00 20261018
+*
+* DailyDataSource: Where DailyData gets its history. DailyData calls
+* the installed source for loadAll(), and for fetch() and last() when
+* the answer is not already in memory:
+*
+*		DailyData.setSource(new SnapshotDailySource(new File("daily.bin")));
+*		DailyData.loadAll();
+*
+* Implementations:
+*   JdbcDailySource     - the original [DATA$] sheet through a JDBC driver
+*   CsvDailySource      - a text export of the same sheet
+*   SnapshotDailySource - a binary snapshot read through a memory map;
+*                         its main() exports either of the above
+*
+* @version 1.00
+* 20261018 created
+* 20261018 added fetchAfter for incremental refresh
+* 20261018 fetchRange and fetchAll, to read many days at once
+*******************************************************/
+import java.util.Collection;
+import java.util.TreeSet;
+
+public interface DailyDataSource
+	{
+	/** @return every usable row, in date order */
+	public DailyColumns loadAll() throws Exception;
+
+	/** @return a one row DailyColumns holding yyyymmdd, or null if none */
+	public DailyColumns fetch(String yyyymmdd) throws Exception;
+
+	/** @return a one row DailyColumns holding the latest day, or null */
+	public DailyColumns last() throws Exception;
+
+	/**
+	* @return the usable rows dated after yyyymmdd, in date order, which
+	* may be none - used by DailyData.refresh() to pick up new days
+	*/
+	public DailyColumns fetchAfter(int yyyymmdd) throws Exception;
+
+	/**
+	* @return the usable rows dated from the first date through the last,
+	* in date order. By default read with fetchAfter(); a source that can
+	* bound the read at both ends should override it.
+	*/
+	public default DailyColumns fetchRange(int fromYmd, int toYmd) throws Exception
+		{
+		DailyColumns after = fetchAfter(fromYmd - 1);
+		int[] rows = after.range(fromYmd, toYmd);
+		return (rows[0] == 0 && rows[1] == after.size()) ? after
+		                                                : after.rows(rows[0], rows[1]);
+		}
+
+	/**
+	* @return the rows of those dates (yyyymmdd) that have data, in date
+	* order. By default read with one fetchRange() over the dates.
+	*/
+	public default DailyColumns fetchAll(Collection<String> dates) throws Exception
+		{
+		TreeSet<Integer> wanted = new TreeSet<Integer>();
+		for ( String yyyymmdd : dates )
+			wanted.add(Integer.valueOf(yyyymmdd.trim().substring(0, 8)));
+		DailyColumns.Builder it = new DailyColumns.Builder(wanted.size());
+		if ( wanted.isEmpty())
+			return it.build();
+		DailyColumns span = fetchRange(wanted.first(), wanted.last());
+		int[] values = new int[DailyColumns.NUM_FIELDS];
+		for ( int row = 0; row < span.size(); row++ )
+			if ( wanted.contains(span.yyyymmdd(row)))
+				it.add(span, row, values);
+		return it.build();
+		}
+	}
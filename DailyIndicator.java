@@ -0,0 +1,186 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DailyIndicator.java 1.00 20261018
+*
+* DailyIndicator: A value derived from the raw DailyData fields, such as
+* a moving average or the advance/decline ratio, computed once for every
+* loaded day into a primitive result column. Each day's value is worked
+* out from the previous state in constant time, so when DailyData appends
+* a day the indicator extends its column rather than rescanning history.
+*
+* Results are looked up by date like the raw fields:
+*
+*		DailyIndicator adr = DailyIndicator.ratio("NYSE A/D", DailyData.ANYSE, DailyData.DNYSE);
+*		DailyIndicators pipeline = new DailyIndicators().add(adr).start();
+*		double today = DailyData.last().get(adr);
+*
+* Subclasses implement reset() and next(); DailyIndicators calls them, in
+* date order, from whichever thread loads the data. The results are
+* published as an immutable snapshot, the way DailyColumns is, so they
+* can be read from any thread.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.Arrays;
+
+public abstract class DailyIndicator
+	{
+	private final String fName;
+	private volatile Results fResults = new Results(null, new double[0]);
+	private double[] fValues = new double[0]; // shared with the latest Results
+
+	/** The values as of one DailyColumns snapshot, row for row */
+	private static final class Results
+		{
+		final DailyColumns data;
+		final double[] values;
+		Results(DailyColumns aData, double[] aValues) { data = aData; values = aValues; }
+		}
+
+	protected DailyIndicator(String aName) { fName = aName; }
+
+	public final String name() { return fName; }
+	@Override public String toString() { return fName; }
+
+	/** Forget any running state: the next call to next() is for row 0 */
+	protected abstract void reset();
+
+	/**
+	* @return the value for row of data, called for each row in order. The
+	* rows before it are in data too, for indicators that look back.
+	*/
+	protected abstract double next(DailyColumns data, int row);
+
+	/** Recomputes every row of data from scratch */
+	final synchronized void recompute(DailyColumns data)
+		{
+		reset();
+		fValues = new double[Math.max(16, data.size())];
+		for ( int row = 0; row < data.size(); row++ )
+			fValues[row] = next(data, row);
+		fResults = new Results(data, fValues);
+		}
+
+	/** Computes rows first through end - 1, newly appended to data */
+	final synchronized void append(DailyColumns data, int first, int end)
+		{
+		Results results = fResults;
+		if ( results.data == null || results.data.size() != first )
+			{
+			recompute(data); // missed an update - start over
+			return;
+			}
+		if ( end > fValues.length )
+			fValues = Arrays.copyOf(fValues, Math.max(end, 2 * fValues.length));
+		for ( int row = first; row < end; row++ )
+			fValues[row] = next(data, row);
+		fResults = new Results(data, fValues);
+		}
+
+	/** @return the value for yyyymmdd, or NaN if that day is not loaded */
+	public final double get(int yyyymmdd)
+		{
+		Results results = fResults;
+		if ( results.data == null )
+			return Double.NaN;
+		int row = results.data.indexOf(yyyymmdd);
+		return (row < 0) ? Double.NaN : results.values[row];
+		}
+
+	/** @return the value for day's date, or NaN if not computed */
+	public final double get(DailyData day) { return get(day.ymd()); }
+
+	/** @return the number of days computed */
+	public final int size()
+		{
+		Results results = fResults;
+		return (results.data == null) ? 0 : results.data.size();
+		}
+
+	/** @return a copy of the computed values, row for row with DailyData */
+	public final double[] values()
+		{
+		Results results = fResults;
+		return Arrays.copyOf(results.values, size());
+		}
+
+	/** field[row] / field[row] of another field, e.g. advancing / declining issues */
+	public static DailyIndicator ratio(String name, final byte num, final byte den)
+		{
+		return new DailyIndicator(name)
+			{
+			protected void reset() {}
+			protected double next(DailyColumns data, int row)
+				{
+				int d = data.get(row, den);
+				return (d == 0) ? Double.NaN : (double)data.get(row, num) / d;
+				}
+			};
+		}
+
+	/** field a less field b, e.g. new highs less new lows */
+	public static DailyIndicator difference(String name, final byte a, final byte b)
+		{
+		return new DailyIndicator(name)
+			{
+			protected void reset() {}
+			protected double next(DailyColumns data, int row)
+				{
+				return data.get(row, a) - data.get(row, b);
+				}
+			};
+		}
+
+	/**
+	* Simple moving average of field over n days, kept as a running sum.
+	* The first n - 1 days average the days available.
+	*/
+	public static DailyIndicator sma(String name, final byte field, final int n)
+		{
+		return new DailyIndicator(name)
+			{
+			private long sum;
+			protected void reset() { sum = 0; }
+			protected double next(DailyColumns data, int row)
+				{
+				sum += data.get(row, field);
+				if ( row >= n )
+					sum -= data.get(row - n, field);
+				return (double)sum / Math.min(n, row + 1);
+				}
+			};
+		}
+
+	/** Exponential moving average of field with smoothing 2 / (n + 1) */
+	public static DailyIndicator ema(String name, final byte field, final int n)
+		{
+		final double alpha = 2.0 / (n + 1);
+		return new DailyIndicator(name)
+			{
+			private double ema;
+			protected void reset() {}
+			protected double next(DailyColumns data, int row)
+				{
+				int value = data.get(row, field);
+				ema = (row == 0) ? value : ema + alpha * (value - ema);
+				return ema;
+				}
+			};
+		}
+
+	/** Today's field relative to its n day average, e.g. volume surges */
+	public static DailyIndicator smaRatio(String name, final byte field, final int n)
+		{
+		final DailyIndicator avg = sma(name + " avg", field, n);
+		return new DailyIndicator(name)
+			{
+			protected void reset() { avg.reset(); }
+			protected double next(DailyColumns data, int row)
+				{
+				double mean = avg.next(data, row);
+				return (mean == 0) ? Double.NaN : data.get(row, field) / mean;
+				}
+			};
+		}
+	}
@@ -0,0 +1,83 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DailyIndicators.java 1.00 20261018
+*
+* DailyIndicators: Keeps a set of DailyIndicator up to date with the
+* DailyData history. Once started, a full load recomputes every
+* indicator and a refresh() extends each one by just the appended days.
+*
+*		DailyIndicators pipeline = new DailyIndicators()
+*			.add(DailyIndicator.sma("SPX 50", DailyData.SPX, 50))
+*			.add(DailyIndicator.difference("NYSE H-L", DailyData.HNYSE, DailyData.LNYSE))
+*			.start();
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public final class DailyIndicators
+	implements DailyDataListener
+	{
+	private final List<DailyIndicator> fIndicators
+	                                   = new CopyOnWriteArrayList<DailyIndicator>();
+	private volatile DailyColumns fData = null; // as of the last update
+
+	/** Adds an indicator, computing it over the current history if started */
+	public synchronized DailyIndicators add(DailyIndicator indicator)
+		{
+		fIndicators.add(indicator);
+		if ( fData != null )
+			indicator.recompute(fData);
+		return this;
+		}
+
+	public synchronized void remove(DailyIndicator indicator)
+		{
+		fIndicators.remove(indicator);
+		}
+
+	/** @return the indicator with the given name, or null */
+	public DailyIndicator get(String name)
+		{
+		for ( DailyIndicator indicator : fIndicators )
+			if ( indicator.name().equals(name))
+				return indicator;
+		return null;
+		}
+
+	public List<DailyIndicator> indicators() { return fIndicators; }
+
+	/**
+	* Computes the indicators over the current history, loading it if need
+	* be, and follows DailyData from then on
+	*/
+	public DailyIndicators start()
+		{
+		synchronized (DailyData.class) // no load or refresh in between
+			{
+			DailyData.addListener(this);
+			dataLoaded(DailyData.columns());
+			}
+		return this;
+		}
+
+	public void stop() { DailyData.removeListener(this); }
+
+	public synchronized void dataLoaded(DailyColumns data)
+		{
+		if ( data == fData )
+			return;
+		for ( DailyIndicator indicator : fIndicators )
+			indicator.recompute(data);
+		fData = data;
+		}
+
+	public synchronized void daysAppended(DailyColumns data, int first, int end)
+		{
+		for ( DailyIndicator indicator : fIndicators )
+			indicator.append(data, first, end);
+		fData = data;
+		}
+	}
@@ -0,0 +1,257 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DailyStats.java 1.00 20261018
+*
+* DailyStats: Summary statistics of one DailyData field over a range of
+* dates: count, min, max, mean, variance and standard deviation, plus
+* percentiles and rolling window means and deviations.
+*
+* The work is done directly on the primitive columns of a DailyColumns
+* snapshot. Long ranges are split across the common fork-join pool; each
+* piece takes two quick passes over its rows, one for the mean and one for
+* the squared deviations from it, and the pieces are combined with the
+* pairwise variance formula, so no pass spans the whole history:
+*
+*		DailyStats vix = DailyStats.of(DailyData.VIX, 20080101, 20121231);
+*		double sd = vix.stdDev();
+*		int median = DailyStats.percentile(DailyData.columns(), DailyData.VIX,
+*		                                   20080101, 20121231, 50);
+*
+* @version 1.00
+* 20261018 created
+* 20261018 rolling deviations updated Welford style rather than from a
+*          running sum of squares, which lost precision on large fields
+*******************************************************/
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+public final class DailyStats
+	{
+	/** Ranges with fewer rows than this are summed on the calling thread */
+	private static final int SPLIT_ROWS = 1 << 14;
+
+	private final byte   fField;
+	private final int    fCount;
+	private final int    fMin;
+	private final int    fMax;
+	private final double fMean;
+	private final double fM2; // sum of squared deviations from the mean
+
+	private DailyStats(byte aField, int aCount, int aMin, int aMax, double aMean, double aM2)
+		{
+		fField = aField;
+		fCount = aCount;
+		fMin = aMin;
+		fMax = aMax;
+		fMean = aMean;
+		fM2 = aM2;
+		}
+
+	public byte   field()    { return fField; }
+	public int    count()    { return fCount; }
+	/** @return the smallest value, Integer.MAX_VALUE if count() is 0 */
+	public int    min()      { return fMin; }
+	/** @return the largest value, Integer.MIN_VALUE if count() is 0 */
+	public int    max()      { return fMax; }
+	public double mean()     { return fMean; }
+	/** @return the population variance */
+	public double variance() { return (fCount == 0) ? 0 : fM2 / fCount; }
+	/** @return the sample variance, dividing by count() - 1 */
+	public double sampleVariance() { return (fCount < 2) ? 0 : fM2 / (fCount - 1); }
+	public double stdDev()   { return Math.sqrt(variance()); }
+
+	@Override public String toString()
+		{
+		return String.format("[%d] n=%d min=%d max=%d mean=%.2f sd=%.2f",
+		                     fField, fCount, fMin, fMax, fMean, stdDev());
+		}
+
+	/** @return the statistics of field over the loaded history between the dates */
+	public static DailyStats of(byte field, int fromYmd, int toYmd)
+		{
+		return of(DailyData.columns(), field, fromYmd, toYmd);
+		}
+
+	/** @return the statistics of field over data between the dates inclusive */
+	public static DailyStats of(DailyColumns data, byte field, int fromYmd, int toYmd)
+		{
+		int[] rows = data.range(fromYmd, toYmd);
+		return ofRows(data.rawColumn(field), field, rows[0], rows[1]);
+		}
+
+	/**
+	* @return the statistics of field for each {fromYmd, toYmd} in ranges,
+	* computed in parallel - for dashboards that want many windows at once
+	*/
+	public static DailyStats[] of(final DailyColumns data, final byte field,
+	                              final int[][] ranges)
+		{
+		final DailyStats[] it = new DailyStats[ranges.length];
+		IntStream.range(0, ranges.length).parallel().forEach(
+			i -> it[i] = of(data, field, ranges[i][0], ranges[i][1]));
+		return it;
+		}
+
+	static DailyStats ofRows(int[] column, byte field, int from, int to)
+		{
+		if ( to - from < SPLIT_ROWS )
+			return sum(column, field, from, to);
+		return ForkJoinPool.commonPool().invoke(new Summer(column, field, from, to));
+		}
+
+	private static DailyStats sum(int[] column, byte field, int from, int to)
+		{
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		long sum = 0;
+		for ( int i = from; i < to; i++ )
+			{
+			int value = column[i];
+			sum += value;
+			if ( value < min ) min = value;
+			if ( value > max ) max = value;
+			}
+		int n = to - from;
+		double mean = (n == 0) ? 0 : (double)sum / n;
+		double m2 = 0;
+		for ( int i = from; i < to; i++ )
+			{
+			double d = column[i] - mean;
+			m2 += d * d;
+			}
+		return new DailyStats(field, n, min, max, mean, m2);
+		}
+
+	/** Chan et al: combine the moments of two disjoint ranges */
+	private static DailyStats merge(DailyStats a, DailyStats b)
+		{
+		if ( a.fCount == 0 ) return b;
+		if ( b.fCount == 0 ) return a;
+		int n = a.fCount + b.fCount;
+		double delta = b.fMean - a.fMean;
+		double mean = a.fMean + delta * b.fCount / n;
+		double m2 = a.fM2 + b.fM2 + delta * delta * ((double)a.fCount * b.fCount / n);
+		return new DailyStats(a.fField, n, Math.min(a.fMin, b.fMin),
+		                      Math.max(a.fMax, b.fMax), mean, m2);
+		}
+
+	private static final class Summer
+		extends RecursiveTask<DailyStats>
+		{
+		private static final long serialVersionUID = 1L;
+		private final int[] fColumn;
+		private final byte  fField;
+		private final int   fFrom, fTo;
+
+		Summer(int[] aColumn, byte aField, int aFrom, int aTo)
+			{
+			fColumn = aColumn;
+			fField = aField;
+			fFrom = aFrom;
+			fTo = aTo;
+			}
+
+		@Override protected DailyStats compute()
+			{
+			if ( fTo - fFrom < SPLIT_ROWS )
+				return sum(fColumn, fField, fFrom, fTo);
+			int mid = (fFrom + fTo) >>> 1;
+			Summer left = new Summer(fColumn, fField, fFrom, mid);
+			left.fork();
+			DailyStats right = new Summer(fColumn, fField, mid, fTo).compute();
+			return merge(left.join(), right);
+			}
+		}
+
+	/**
+	* @return the pth percentile (0 - 100) of field between the dates,
+	* by the nearest rank method, or 0 if there is no data in the range
+	*/
+	public static int percentile(DailyColumns data, byte field,
+	                             int fromYmd, int toYmd, double p)
+		{
+		return percentiles(data, field, fromYmd, toYmd, p)[0];
+		}
+
+	/**
+	* @return the percentiles ps (each 0 - 100) of field between the dates,
+	* sorting the range only once
+	*/
+	public static int[] percentiles(DailyColumns data, byte field,
+	                                int fromYmd, int toYmd, double... ps)
+		{
+		int[] rows = data.range(fromYmd, toYmd);
+		int[] sorted = Arrays.copyOfRange(data.rawColumn(field), rows[0], rows[1]);
+		if ( sorted.length < SPLIT_ROWS ) Arrays.sort(sorted);
+		else Arrays.parallelSort(sorted);
+		int[] it = new int[ps.length];
+		if ( sorted.length == 0 )
+			return it;
+		for ( int i = 0; i < ps.length; i++ )
+			{
+			int rank = (int)Math.ceil(ps[i] / 100.0 * sorted.length);
+			it[i] = sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+			}
+		return it;
+		}
+
+	/**
+	* @return the mean of field over the window days ending on each row
+	* between the dates. The first window - 1 results use the rows before
+	* fromYmd when there are any, and average fewer days when there are not.
+	*/
+	public static double[] rollingMean(DailyColumns data, byte field,
+	                                   int fromYmd, int toYmd, int window)
+		{
+		return rolling(data, field, fromYmd, toYmd, window, false);
+		}
+
+	/** @return the population standard deviation over a rolling window, as rollingMean */
+	public static double[] rollingStdDev(DailyColumns data, byte field,
+	                                     int fromYmd, int toYmd, int window)
+		{
+		return rolling(data, field, fromYmd, toYmd, window, true);
+		}
+
+	private static double[] rolling(DailyColumns data, byte field, int fromYmd,
+	                                int toYmd, int window, boolean wantDev)
+		{
+		if ( window < 1 )
+			throw new IllegalArgumentException("window " + window);
+		int[] column = data.rawColumn(field);
+		int[] rows = data.range(fromYmd, toYmd);
+		double[] it = new double[rows[1] - rows[0]];
+		int start = Math.max(0, rows[0] - window + 1);
+		long sum = 0;      // exact, so the mean never drifts
+		double mean = 0;
+		double m2 = 0;     // squared deviations from the window's mean
+		for ( int i = start; i < rows[1]; i++ )
+			{
+			int in = column[i];
+			sum += in;
+			if ( i - start < window ) // the window is still filling
+				{
+				int n = i - start + 1;
+				double newMean = (double)sum / n;
+				m2 += (in - mean) * (in - newMean);
+				mean = newMean;
+				}
+			else // in replaces out
+				{
+				int out = column[i - window];
+				sum -= out;
+				double newMean = (double)sum / window;
+				m2 += ((double)in - out) * ((in - newMean) + (out - mean));
+				mean = newMean;
+				}
+			if ( i >= rows[0] )
+				{
+				int n = Math.min(window, i - start + 1);
+				it[i - rows[0]] = wantDev ? Math.sqrt(Math.max(0, m2 / n)) : mean;
+				}
+			}
+		return it;
+		}
+	}
@@ -15,8 +15,8 @@ package com.wormtrader.almanac;
 *
 *		// the following line gives the effective start
 *		// date which is only different from startDate
-*		// if start date is a weekend
-*		String yyyymmdd = dl.yyyymmdd();
+*		// if start date is a weekend or holiday
+*		int yyyymmdd = dl.yyyymmdd();
 *
 *		int runDays = dl.countDaysTil( endDate );
 *		for ( int dayNum = 0; dayNum < runDays; dayNum++ )
@@ -25,6 +25,19 @@ package com.wormtrader.almanac;
 *			yyyymmdd = dl.nextDay();
 *			}
 *
+* When skipping weekends the walk is over market days and each step is
+* an index into the TradingDays table; otherwise it is over every day
+* that is not a holiday. Either way list(), count(), forEach(), stream()
+* and cursor() cover the range given to the constructor, while nextDay(),
+* prevDay() and skipTo() move the walker's current day without bound.
+* The holidays are those of a MarketCalendars calendar, NYSE unless the
+* constructor names another; the static methods use NYSE.
+*
+* The sessions of the range come from the same calendar, early closes
+* included: forEachBar() passes the start time of every N minute bar of
+* every session, barCount() counts them, and tradingMinutes() counts the
+* minutes of trading between the start and end times, without iterating.
+*
 * @author Rick Salamone
 * @version 2.00
 * 208      rts created
@@ -34,12 +47,23 @@ package com.wormtrader.almanac;
 * 20130410 rts added prevMarketDay
 * 20140212 rts list() returns a List - added array() to return []
 * 20140303 rts added ymd version of prevMarketDate
+* 20261018 market day arithmetic from the precomputed TradingDays table
+* 20261018 count, forEach, stream and cursor iterate without building lists
+* 20261018 added the documented nextDay/countDaysTil walker, prevDay, skipTo;
+*          the range methods respect m_skipWeekends
+* 20261018 walks the market days of a named calendar, NYSE by default
+* 20261018 session aware: calendar session times, bars and trading minutes
 *******************************************************/
 import com.shanebow.util.SBDate;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Vector;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
 
 public final class DateWalker
 	{
@@ -47,47 +71,40 @@ public final class DateWalker
 	boolean m_skipWeekends = true;
 	private final long fTimeStart;
 	private final long fTimeEnd;
+	private final int fFromYmd;
+	private final int fToYmd;
+	private final String fCalendar; // name in MarketCalendars
+	private final long fTimeOfDay;  // seconds past midnight of fTimeStart
 	private long fTimeCurrent;
+	private int fCurrentYmd;
 
 	public static final int prevMarketDay(int ymd) {
-		return Integer.parseInt(prevMarketDay("" + ymd));
+		return TradingDays.covering(ymd).prev(ymd);
 		}
 
 	public static final int nextMarketDay(int ymd) {
-		return Integer.parseInt(nextMarketDay("" + ymd));
+		return TradingDays.covering(ymd).next(ymd);
 		}
 
 	public static final String prevMarketDay(String yyyymmdd)
 		{
-		long time = SBDate.toTime(yyyymmdd);
-		String it;
-		do
-			{
-			time = SBDate.prevWeekDay(time);
-			it = SBDate.yyyymmdd(time);
-			}
-		while (Holidays.isHoliday(Integer.parseInt(it)));
-		return it;
+		return String.valueOf(prevMarketDay(Integer.parseInt(yyyymmdd.substring(0,8))));
 		}
 
 	public static final String nextMarketDay(String yyyymmdd)
 		{
-		long time = SBDate.toTime(yyyymmdd);
-		String it;
-		do
-			{
-			time = SBDate.nextWeekDay(time);
-			it = SBDate.yyyymmdd(time);
-			}
-		while (Holidays.isHoliday(Integer.parseInt(it)));
-		return it;
+		return String.valueOf(nextMarketDay(Integer.parseInt(yyyymmdd.substring(0,8))));
 		}
 
-	private static final Calendar getCal( long t )
+	/** @return the number of market days from the first date through the second */
+	public static final int marketDaysBetween(int fromYmd, int toYmd)
 		{
-		Calendar cal = Calendar.getInstance();
-		cal.setTimeInMillis(t * MILLIS_PER_SEC);
-		return cal;
+		if ( toYmd < fromYmd )
+			return 0;
+		TradingDays td = TradingDays.covering(fromYmd);
+		if ( !td.covers(toYmd))
+			td = TradingDays.covering(toYmd);
+		return td.between(fromYmd, toYmd);
 		}
 
 	public DateWalker(long[] aRange)
@@ -100,25 +117,179 @@ public final class DateWalker
 		this(aRange[0], aRange[1], aSkipWeekends);
 		}
 
+	/** A walker from the NYSE open on the first date to its close on the second */
 	public DateWalker(String yyyymmdd0, String yyyymmdd1)
 		{
-		this(SBDate.toTime(yyyymmdd0 + "  09:30"),
-		     SBDate.toTime(yyyymmdd1 + "  16:00"), true);
+		this(sessionTime(yyyymmdd0, true), sessionTime(yyyymmdd1, false), true);
+		}
+
+	private static long sessionTime(String yyyymmdd, boolean open)
+		{
+		int ymd = Integer.parseInt(yyyymmdd.substring(0,8));
+		MarketCalendar cal = Holidays.covering(ymd);
+		return Ymd.toTime(ymd) + 60L * (open ? cal.openMinute(ymd) : cal.closeMinute(ymd));
+		}
+
+	/** @return the NYSE trading minutes from one SBDate time up to another */
+	public static final int tradingMinutesBetween(long fromTime, long toTime)
+		{
+		return tradingMinutes(MarketCalendars.NYSE, fromTime, toTime);
+		}
+
+	private static int tradingMinutes(String calendar, long fromTime, long toTime)
+		{
+		if ( toTime <= fromTime )
+			return 0;
+		MarketCalendars.covering(calendar, Ymd.fromTime(fromTime));
+		return MarketCalendars.covering(calendar, Ymd.fromTime(toTime))
+		                      .tradingMinutes(fromTime, toTime);
+		}
+
+	/** A walker positioned on yyyymmdd, or the first walk day after it */
+	public DateWalker(String yyyymmdd, boolean aSkipWeekends )
+		{
+		this(SBDate.toTime(yyyymmdd), SBDate.toTime(yyyymmdd), aSkipWeekends);
 		}
 
 	public DateWalker(long aTimeStart, long aTimeEnd, boolean aSkipWeekends )
 		{
+		this(aTimeStart, aTimeEnd, aSkipWeekends, MarketCalendars.NYSE);
+		}
+
+	/** A walker over the market days of the named MarketCalendars calendar */
+	public DateWalker(long aTimeStart, long aTimeEnd, boolean aSkipWeekends, String aCalendar )
+		{
+		MarketCalendars.get(aCalendar); // fail now if unknown
+		fCalendar = aCalendar;
 		fTimeStart = aTimeStart;
 		fTimeEnd = aTimeEnd;
-		fTimeCurrent = fTimeStart;
+		fFromYmd = Ymd.fromTime(aTimeStart);
+		fToYmd = Ymd.fromTime(aTimeEnd);
+		fTimeOfDay = aTimeStart - Ymd.toTime(fFromYmd);
 		m_skipWeekends = aSkipWeekends;
+		skipTo(fFromYmd);
+		}
+
+	/** @return the name of the calendar whose holidays are skipped */
+	public String calendar() { return fCalendar; }
+
+	private boolean isHoliday(int yyyymmdd)
+		{
+		return MarketCalendars.covering(fCalendar, yyyymmdd).isHoliday(yyyymmdd);
 		}
 
 	private long getTime(Calendar aCal) { 	return aCal.getTimeInMillis() / MILLIS_PER_SEC; }
 
+	private void setCurrent(int yyyymmdd)
+		{
+		fCurrentYmd = yyyymmdd;
+		fTimeCurrent = Ymd.toTime(yyyymmdd) + fTimeOfDay;
+		}
+
+	/**
+	* Moves to yyyymmdd, or to the first walk day after it if it is a
+	* weekend (when skipping them) or a holiday
+	* @return the new current day
+	*/
+	public final int skipTo(int yyyymmdd)
+		{
+		if ( m_skipWeekends )
+			setCurrent(TradingDays.covering(fCalendar, yyyymmdd).onOrAfter(yyyymmdd));
+		else
+			{
+			while ( isHoliday(yyyymmdd))
+				yyyymmdd = Ymd.addDays(yyyymmdd, 1);
+			setCurrent(yyyymmdd);
+			}
+		return fCurrentYmd;
+		}
+
+	/** Advances to the next walk day and returns it */
+	public final int nextDay()
+		{
+		if ( m_skipWeekends )
+			setCurrent(TradingDays.covering(fCalendar, fCurrentYmd).next(fCurrentYmd));
+		else
+			{
+			int day = fCurrentYmd;
+			do day = Ymd.addDays(day, 1);
+			while ( isHoliday(day));
+			setCurrent(day);
+			}
+		return fCurrentYmd;
+		}
+
+	/** Steps back to the previous walk day and returns it */
+	public final int prevDay()
+		{
+		if ( m_skipWeekends )
+			setCurrent(TradingDays.covering(fCalendar, fCurrentYmd).prev(fCurrentYmd));
+		else
+			{
+			int day = fCurrentYmd;
+			do day = Ymd.addDays(day, -1);
+			while ( isHoliday(day));
+			setCurrent(day);
+			}
+		return fCurrentYmd;
+		}
+
+	/**
+	* @return the number of walk days from the current day through endDate
+	* inclusive: how many times to process a day, calling nextDay() after
+	* each, to reach the end
+	*/
+	public final int countDaysTil(int endDate)
+		{
+		return countDays(fCurrentYmd, endDate);
+		}
+
+	public final int countDaysTil(String endDate)
+		{
+		return countDaysTil(Integer.parseInt(endDate.substring(0,8)));
+		}
+
+	private int countDays(int fromYmd, int toYmd)
+		{
+		if ( toYmd < fromYmd )
+			return 0;
+		if ( m_skipWeekends )
+			{
+			TradingDays td = TradingDays.covering(fCalendar, fromYmd);
+			if ( !td.covers(toYmd))
+				td = TradingDays.covering(fCalendar, toYmd);
+			return td.between(fromYmd, toYmd);
+			}
+		int count = 0;
+		for ( int day = Ymd.toEpochDay(fromYmd), end = Ymd.toEpochDay(toYmd); day <= end; day++ )
+			if ( !isHoliday(Ymd.fromEpochDay(day)))
+				++count;
+		return count;
+		}
+
 	public final int size()
 		{
-		return list().size();
+		return count();
+		}
+
+	/** @return the number of days in the range, without listing them */
+	public final int count()
+		{
+		return countDays(fFromYmd, fToYmd);
+		}
+
+	/** @return the market day table covering the whole range */
+	private TradingDays table()
+		{
+		TradingDays td = TradingDays.covering(fCalendar, fFromYmd);
+		return td.covers(fToYmd) ? td : TradingDays.covering(fCalendar, fToYmd);
+		}
+
+	/** @return the holiday calendar covering the whole range */
+	private MarketCalendar holidays()
+		{
+		MarketCalendars.covering(fCalendar, fFromYmd);
+		return MarketCalendars.covering(fCalendar, fToYmd);
 		}
 
 	public final String[] array()
@@ -128,26 +299,167 @@ public final class DateWalker
 
 	public final List<String> list()
 		{
-		List<String> list = new Vector<String>();
-		Calendar c = Calendar.getInstance();
-		long currentMillis = fTimeStart * MILLIS_PER_SEC;
-		c.setTimeInMillis(currentMillis);
-		int currentDOW = c.get(Calendar.DAY_OF_WEEK);
-		long endMillis = (fTimeEnd * MILLIS_PER_SEC);
-		while (currentMillis <= endMillis)
+		final List<String> list = new Vector<String>(count());
+		forEach(yyyymmdd -> list.add(String.valueOf(yyyymmdd)));
+		return list;
+		}
+
+	/** Passes each day in the range, as yyyymmdd, to action */
+	public final void forEach(IntConsumer action)
+		{
+		Cursor days = cursor();
+		while ( days.hasNext())
+			action.accept(days.nextInt());
+		}
+
+	/** @return the minutes of trading from the start time to the end time */
+	public final int tradingMinutes()
+		{
+		return tradingMinutes(fCalendar, fTimeStart, fTimeEnd);
+		}
+
+	/**
+	* @return the number of barMinutes bars in the sessions of the market
+	* days of the range - what forEachBar() would pass - a bar cut short
+	* by the close counting as one
+	*/
+	public final int barCount(int barMinutes)
+		{
+		if ( barMinutes <= 0 )
+			throw new IllegalArgumentException("bar of " + barMinutes + " minutes");
+		if ( fToYmd < fFromYmd )
+			return 0;
+		TradingDays td = table();
+		MarketCalendar cal = td.calendar();
+		int open = cal.openMinute();
+		int regular = bars(cal.closeMinute() - open, barMinutes);
+		int count = td.between(fFromYmd, fToYmd) * regular;
+		for ( Holiday early : cal.earlyCloses(fFromYmd, fToYmd))
+			count += bars(early.closeMinute() - open, barMinutes) - regular;
+		return count;
+		}
+
+	private static int bars(int minutes, int barMinutes)
+		{
+		return (minutes <= 0) ? 0 : (minutes + barMinutes - 1) / barMinutes;
+		}
+
+	/**
+	* Passes the start time (an SBDate time) of each barMinutes bar of
+	* the session of each market day in the range to action; a bar of 1
+	* minute walks every minute of trading. Short sessions end early.
+	*/
+	public final void forEachBar(int barMinutes, LongConsumer action)
+		{
+		if ( barMinutes <= 0 )
+			throw new IllegalArgumentException("bar of " + barMinutes + " minutes");
+		if ( fToYmd < fFromYmd )
+			return;
+		TradingDays td = table();
+		MarketCalendar cal = td.calendar();
+		for ( int n = td.rank(fFromYmd), end = td.rank(Ymd.addDays(fToYmd, 1)); n < end; n++ )
 			{
-			int yyyymmdd = yyyymmdd(c);
-			if (!Holidays.isHoliday(yyyymmdd))
-				list.add("" + yyyymmdd);
-// else System.out.println("Skipped holiday " + yyyymmdd + " " + Holidays.fetch(yyyymmdd).name()
-// + " " + SBDate.dayName[c.get(Calendar.DAY_OF_WEEK)]);
-			int daysToAdd = (currentDOW == Calendar.FRIDAY)? 3 : 1;
-			c.add(Calendar.DATE, daysToAdd);
-			if (currentDOW != Calendar.FRIDAY) ++currentDOW;
-			else currentDOW = Calendar.MONDAY;
-			currentMillis = c.getTimeInMillis();
+			int ymd = td.day(n);
+			long midnight = Ymd.toTime(ymd);
+			for ( int minute = cal.openMinute(ymd), close = cal.closeMinute(ymd);
+			      minute < close; minute += barMinutes )
+				action.accept(midnight + 60L * minute);
+			}
+		}
+
+	/** @return the days in the range, as yyyymmdd */
+	public final IntStream stream()
+		{
+		if ( fToYmd < fFromYmd )
+			return IntStream.empty();
+		if ( !m_skipWeekends )
+			{
+			final MarketCalendar holidays = holidays();
+			return IntStream.rangeClosed(Ymd.toEpochDay(fFromYmd), Ymd.toEpochDay(fToYmd))
+			                .map(Ymd::fromEpochDay)
+			                .filter(ymd -> !holidays.isHoliday(ymd));
+			}
+		final TradingDays td = table();
+		return IntStream.range(td.rank(fFromYmd), td.rank(Ymd.addDays(fToYmd, 1)))
+		                .map(n -> td.day(n));
+		}
+
+	/**
+	* @return a cursor over the days in the range. A cursor can be
+	* rewound with reset() and walked again, so a loop that revisits the
+	* range need not allocate anything:
+	*
+	*		DateWalker.Cursor days = walker.cursor();
+	*		while ( days.hasNext())
+	*			process(days.nextInt());
+	*/
+	public final Cursor cursor()
+		{
+		return m_skipWeekends ? new Cursor(table(), null, fFromYmd, fToYmd)
+		                      : new Cursor(null, holidays(), fFromYmd, fToYmd);
+		}
+
+	/**
+	* Iterates market days by index into a TradingDays table, or with a
+	* null table, every day that is not a holiday of the calendar by epoch day
+	*/
+	public static final class Cursor
+		implements PrimitiveIterator.OfInt
+		{
+		private final TradingDays fTable;
+		private final MarketCalendar fHolidays;
+		private final int fFirst;
+		private final int fEnd;
+		private int fNext;
+
+		Cursor(TradingDays aTable, MarketCalendar aHolidays, int fromYmd, int toYmd)
+			{
+			fTable = aTable;
+			fHolidays = aHolidays;
+			if ( toYmd < fromYmd )
+				fFirst = fEnd = 0;
+			else if ( aTable != null )
+				{
+				fFirst = aTable.rank(fromYmd);
+				fEnd = aTable.rank(Ymd.addDays(toYmd, 1));
+				}
+			else
+				{
+				fFirst = Ymd.toEpochDay(fromYmd);
+				fEnd = Ymd.toEpochDay(toYmd) + 1;
+				}
+			reset();
+			}
+
+		public boolean hasNext() { return fNext < fEnd; }
+
+		public int nextInt()
+			{
+			if ( fNext >= fEnd )
+				throw new NoSuchElementException();
+			if ( fTable != null )
+				return fTable.day(fNext++);
+			int it = Ymd.fromEpochDay(fNext++);
+			skipHolidays();
+			return it;
+			}
+
+		private void skipHolidays()
+			{
+			while ( fNext < fEnd && fHolidays.isHoliday(Ymd.fromEpochDay(fNext)))
+				++fNext;
+			}
+
+		/** @return the number of days left, at most, skipping holidays */
+		public int remaining() { return fEnd - fNext; }
+
+		/** Rewinds to the first day of the range */
+		public void reset()
+			{
+			fNext = fFirst;
+			if ( fTable == null )
+				skipHolidays();
 			}
-		return list;
 		}
 
 	@Override public String toString()
@@ -162,5 +474,9 @@ public final class DateWalker
 				+         aCal.get(Calendar.DAY_OF_MONTH);
 		}
 
-	public int yyyymmdd() { return yyyymmdd(getCal(fTimeCurrent)); }
+	/** @return the current day of the walk */
+	public int yyyymmdd() { return fCurrentYmd; }
+
+	/** @return the current day of the walk at the time of day of the start */
+	public long getTime() { return fTimeCurrent; }
 	}
@@ -0,0 +1,103 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DayBitSet.java 1.00 20261018
+*
+* DayBitSet: One bit per calendar day over a span of epoch days, with a
+* rank directory so that, once frozen, membership is a single bit test,
+* rank (the number of set days before a day) is one table lookup plus a
+* bit count, and select (the kth set day) is a binary search over the
+* directory followed by a scan of one word.
+*
+* Set the days, freeze(), then share: a frozen set is never modified.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+
+final class DayBitSet
+	{
+	static final int NONE = Integer.MAX_VALUE; // no such day
+
+	private final int fBase;   // epoch day of bit 0
+	private final int fEnd;    // epoch day just past the last bit
+	private final long[] fWords;
+	private int[] fRanks = null; // fRanks[w] = bits set in words before w
+
+	/** A set covering epoch days firstDay (inclusive) through endDay (exclusive) */
+	DayBitSet(int firstDay, int endDay)
+		{
+		fBase = firstDay;
+		fEnd = Math.max(firstDay, endDay);
+		fWords = new long[(fEnd - fBase + 63) >>> 6];
+		}
+
+	int firstDay() { return fBase; }
+	int endDay()   { return fEnd; }
+	boolean covers(int epochDay) { return epochDay >= fBase && epochDay < fEnd; }
+
+	void set(int epochDay)
+		{
+		if ( fRanks != null )
+			throw new IllegalStateException("frozen");
+		if ( !covers(epochDay))
+			throw new IllegalArgumentException("day " + epochDay + " outside set");
+		int bit = epochDay - fBase;
+		fWords[bit >>> 6] |= 1L << bit;
+		}
+
+	/** Builds the rank directory: no more set() calls after this */
+	DayBitSet freeze()
+		{
+		int[] ranks = new int[fWords.length + 1];
+		for ( int w = 0; w < fWords.length; w++ )
+			ranks[w + 1] = ranks[w] + Long.bitCount(fWords[w]);
+		fRanks = ranks;
+		return this;
+		}
+
+	/** @return true if epochDay is set, false if clear or outside the span */
+	boolean get(int epochDay)
+		{
+		if ( !covers(epochDay))
+			return false;
+		int bit = epochDay - fBase;
+		return (fWords[bit >>> 6] & (1L << bit)) != 0;
+		}
+
+	/** @return the number of set days in the whole span */
+	int cardinality() { return fRanks[fWords.length]; }
+
+	/** @return the number of set days before epochDay */
+	int rank(int epochDay)
+		{
+		if ( epochDay <= fBase ) return 0;
+		if ( epochDay >= fEnd ) return cardinality();
+		int bit = epochDay - fBase;
+		int w = bit >>> 6;
+		return fRanks[w] + Long.bitCount(fWords[w] & ((1L << bit) - 1));
+		}
+
+	/** @return the epoch day of the kth (0 based) set day, or NONE */
+	int select(int k)
+		{
+		if ( k < 0 || k >= cardinality())
+			return NONE;
+		int lo = 0, hi = fWords.length - 1; // last word w with fRanks[w] <= k
+		while ( lo < hi )
+			{
+			int mid = (lo + hi + 1) >>> 1;
+			if ( fRanks[mid] <= k ) lo = mid;
+			else hi = mid - 1;
+			}
+		long word = fWords[lo];
+		for ( int skip = k - fRanks[lo]; skip > 0; skip-- )
+			word &= word - 1; // clear the lowest set bit
+		return fBase + (lo << 6) + Long.numberOfTrailingZeros(word);
+		}
+
+	/** @return the first set day on or after epochDay, or NONE */
+	int next(int epochDay) { return select(rank(epochDay)); }
+
+	/** @return the last set day before epochDay, or NONE */
+	int prev(int epochDay) { return select(rank(epochDay) - 1); }
+	}
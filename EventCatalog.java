@@ -0,0 +1,196 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)EventCatalog.java 1.00 20261018
+*
+* EventCatalog: The current set of recurring events, held as an immutable
+* snapshot - the rules and the EventIndex compiled from them - behind a
+* volatile reference. Readers (RecurringEvent.eventsFor and eventsBetween)
+* just read the reference, so they pay nothing while nothing changes; a
+* load builds a whole new snapshot and swaps it in atomically, so no
+* reader ever sees half a catalog.
+*
+* Until a catalog is loaded the built in events are current. A catalog
+* file has one event per line, in the format RecurringEvent(String) parses,
+* with blank lines and lines starting with '#' ignored:
+*
+*		# ordinal, day, description | optional fields
+*		 1, FRI, Labor Report | time=08:30; importance=3; source=BLS
+*		-1, TUE, Case-Shiller Home Price Index | time=09:00
+*
+*		EventCatalog.load("events.csv");                   // file or web
+*		EventCatalog.watch(new File("events.csv"), 30000); // hot reload
+*
+* A line that does not parse is logged and skipped; a file that cannot be
+* read leaves the current catalog in place.
+*
+* A watched file is only reloaded once its size and time stamp have held
+* still for two checks in a row, so as not to read it while an editor or
+* copy is still writing it. A reload that finds no events, or any line
+* that does not parse, is logged and the current catalog kept.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 reports loads and rejected lines to Metrics
+* 20261018 watch() waits for the file to settle, and keeps the current
+*          catalog if a reload is empty or has bad lines
+*******************************************************/
+import com.shanebow.web.host.HostFile;
+import com.shanebow.util.SBLog;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public final class EventCatalog
+	{
+	private static final String MODULE = "EventCatalog";
+	private static volatile EventIndex _current = new EventIndex(RecurringEvent.builtIn());
+	private static ScheduledExecutorService _watcher = null;
+	private static ScheduledFuture<?> _watch = null;
+
+	private EventCatalog() {}
+
+	static EventIndex index() { return _current; }
+
+	/** @return the events of the current catalog, in file order */
+	public static RecurringEvent[] events() { return _current.rules(); }
+
+	/** Makes the built in events current again */
+	public static void useBuiltIn()
+		{
+		_current = new EventIndex(RecurringEvent.builtIn());
+		}
+
+	/**
+	* Reads a catalog from filespec, a local file or a web address, and
+	* makes it current
+	* @return the number of events loaded
+	*/
+	public static int load(String filespec)
+		throws Exception
+		{
+		return load(HostFile.bufferedReader(filespec), filespec);
+		}
+
+	/** Reads a catalog from reader, closing it, and makes it current */
+	public static int load(BufferedReader reader, String name)
+		throws Exception
+		{
+		long start = Metrics.start();
+		List<RecurringEvent> events = parse(reader, name, new int[1]);
+		publish(events, name, start);
+		return events.size();
+		}
+
+	/**
+	* Rereads a watched catalog file, making it current only if it holds
+	* events and every line parsed
+	*/
+	private static void reload(File file)
+		throws Exception
+		{
+		long start = Metrics.start();
+		int[] rejected = new int[1];
+		List<RecurringEvent> events = parse(new BufferedReader(new FileReader(file)),
+		                                    file.getPath(), rejected);
+		if ( events.isEmpty() || rejected[0] > 0 )
+			SBLog.format( "%s: kept the current catalog, %s has %d events and %d bad lines\n",
+			              MODULE, file, events.size(), rejected[0] );
+		else publish(events, file.getPath(), start);
+		}
+
+	private static void publish(List<RecurringEvent> events, String name, long start)
+		{
+		_current = new EventIndex(events.toArray(new RecurringEvent[0]));
+		Metrics.loaded(MODULE + ".load", events.size(), start);
+		SBLog.format( "%s: %d events from %s\n", MODULE, events.size(), name );
+		}
+
+	/**
+	* @return the events of the lines of reader, closing it
+	* @param rejected element 0 counts the lines that did not parse
+	*/
+	private static List<RecurringEvent> parse(BufferedReader reader, String name, int[] rejected)
+		throws Exception
+		{
+		List<RecurringEvent> events = new ArrayList<RecurringEvent>();
+		try
+			{
+			int lineNo = 0;
+			String line;
+			while ((line = reader.readLine()) != null )
+				{
+				++lineNo;
+				line = line.trim();
+				if ( line.isEmpty() || line.startsWith("#"))
+					continue;
+				try { events.add(new RecurringEvent(line)); }
+				catch (Exception e)
+					{
+					SBLog.format( "%s.%s:%d %s: %s\n", MODULE, name, lineNo, e.toString(), line);
+					Metrics.rejected(MODULE, e);
+					++rejected[0];
+					}
+				}
+			}
+		finally { reader.close(); }
+		return events;
+		}
+
+	/**
+	* Loads the local catalog file now, then checks it every periodMillis
+	* and reloads it when its size or time stamp has changed and then been
+	* the same for two checks. Replaces any earlier watch.
+	*/
+	public static synchronized void watch(final File file, long periodMillis)
+		throws Exception
+		{
+		unwatch();
+		load(new BufferedReader(new FileReader(file)), file.getPath());
+		if ( _watcher == null )
+			_watcher = Executors.newSingleThreadScheduledExecutor(r ->
+				{
+				Thread thread = new Thread(r, MODULE + " watcher");
+				thread.setDaemon(true);
+				return thread;
+				});
+		// time and size last read, then as last checked while changing
+		final long[] seen = { file.lastModified(), file.length(), -1, -1 };
+		_watch = _watcher.scheduleWithFixedDelay(() ->
+			{
+			long modified = file.lastModified();
+			long length = file.length();
+			if ( modified == seen[0] && length == seen[1] )
+				return;
+			if ( modified != seen[2] || length != seen[3] )
+				{
+				seen[2] = modified; // still changing: wait for it to settle
+				seen[3] = length;
+				return;
+				}
+			seen[0] = modified; // not retried until it changes again
+			seen[1] = length;
+			try
+				{
+				reload(file);
+				}
+			catch (Exception e)
+				{
+				SBLog.format( "%s.reload %s: %s\n", MODULE, file, e.toString());
+				}
+			}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		}
+
+	/** Stops watching the catalog file; the current catalog stays */
+	public static synchronized void unwatch()
+		{
+		if ( _watch != null )
+			_watch.cancel(false);
+		_watch = null;
+		}
+	}
@@ -0,0 +1,200 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)EventIndex.java 1.00 20261018
+*
+* EventIndex: The recurring event rules compiled, a month at a time, into
+* a table from day of month to the events that fall on it. Each rule
+* contributes a bit mask of its days in the month (RecurringEvent.domMask)
+* so a month costs one pass over the rules, after which looking up a date
+* is two array indexes. The most recently used months are cached; a
+* multi-year range is answered by eventsBetween() in one pass over its
+* months.
+*
+* A relative rule (a number of market days from another event) is resolved
+* here against the other rules of the index, by description: the other
+* event's days in the surrounding months are shifted by the market days.
+* Since market day rules depend on the holiday calendar, the cache is
+* cleared when the NYSE calendar is rebuilt or reloaded.
+*
+* An index is immutable apart from its cache, and safe to share between
+* threads.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 resolves relative rules; follows the holiday calendar
+* 20261018 reports month cache hits to Metrics
+* 20261018 domMask resolves a single rule, for RecurringEvent.occursOn
+*******************************************************/
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+final class EventIndex
+	{
+	private static final RecurringEvent[] NONE = new RecurringEvent[0];
+	private static final int CACHED_MONTHS = 240; // twenty years
+	private static final int MAX_DEPTH = 8; // relative to relative to ...
+
+	private final RecurringEvent[] fRules;
+	private final Map<String, RecurringEvent> fByDesc = new HashMap<String, RecurringEvent>();
+	private final boolean fUsesCalendar; // a relative or market day rule
+	private MarketCalendar fCalendar = null; // the one the cache was built with
+	private final Map<Integer, RecurringEvent[][]> fMonths
+		= new LinkedHashMap<Integer, RecurringEvent[][]>(64, 0.75f, true)
+			{
+			@Override protected boolean removeEldestEntry(Map.Entry<Integer, RecurringEvent[][]> eldest)
+				{
+				return size() > CACHED_MONTHS;
+				}
+			};
+
+	EventIndex(RecurringEvent[] aRules)
+		{
+		fRules = aRules.clone();
+		boolean usesCalendar = false;
+		for ( RecurringEvent rule : fRules )
+			{
+			String key = rule.getDesc().toLowerCase();
+			if ( !fByDesc.containsKey(key))
+				fByDesc.put(key, rule);
+			usesCalendar |= rule.usesMarketDays();
+			}
+		fUsesCalendar = usesCalendar;
+		}
+
+	/** @return the rules, in catalog order */
+	RecurringEvent[] rules() { return fRules.clone(); }
+
+	/**
+	* @return the month's table: element dom (1 - 31) holds the events
+	* on that day, in catalog order; never null, shared, do not modify
+	*/
+	RecurringEvent[][] month(int year, int month)
+		{
+		Integer key = 100 * year + month;
+		RecurringEvent[][] it;
+		synchronized (fMonths)
+			{
+			if ( fUsesCalendar && fCalendar != Holidays.calendar())
+				{
+				fMonths.clear();
+				fCalendar = Holidays.calendar();
+				}
+			it = fMonths.get(key);
+			}
+		Metrics.cached("EventIndex", it != null);
+		if ( it == null )
+			{
+			it = compile(year, month);
+			synchronized (fMonths)
+				{
+				fMonths.put(key, it);
+				}
+			}
+		return it;
+		}
+
+	private RecurringEvent[][] compile(int year, int month)
+		{
+		int dim = Ymd.daysInMonth(year, month);
+		int[] masks = new int[fRules.length];
+		int[] counts = new int[dim + 1];
+		for ( int r = 0; r < fRules.length; r++ )
+			{
+			int mask = masks[r] = mask(fRules[r], year, month, 0);
+			for ( ; mask != 0; mask &= mask - 1 )
+				++counts[Integer.numberOfTrailingZeros(mask) + 1];
+			}
+		RecurringEvent[][] table = new RecurringEvent[32][];
+		Arrays.fill(table, NONE);
+		for ( int dom = 1; dom <= dim; dom++ )
+			if ( counts[dom] > 0 )
+				table[dom] = new RecurringEvent[counts[dom]];
+		int[] filled = new int[dim + 1];
+		for ( int r = 0; r < fRules.length; r++ )
+			for ( int mask = masks[r]; mask != 0; mask &= mask - 1 )
+				{
+				int dom = Integer.numberOfTrailingZeros(mask) + 1;
+				table[dom][filled[dom]++] = fRules[r];
+				}
+		return table;
+		}
+
+	/**
+	* @return the days of month (1 - 12) on which rule occurs, as a mask
+	* with bit dom - 1 set for each, resolving a relative rule against the
+	* rules of this index
+	*/
+	int domMask(RecurringEvent rule, int year, int month)
+		{
+		return mask(rule, year, month, 0);
+		}
+
+	private int mask(RecurringEvent rule, int year, int month, int depth)
+		{
+		if ( !rule.isRelative())
+			return rule.domMask(year, month);
+		RecurringEvent ref = fByDesc.get(rule.reference().toLowerCase());
+		if ( ref == null || depth >= MAX_DEPTH )
+			return 0; // unknown event, or a cycle
+		int offset = rule.offset();
+		int reach = Math.abs(offset) / 15 + 1; // months either side to look in
+		int monthStart = Ymd.of(year, month, 1);
+		int dim = Ymd.daysInMonth(year, month);
+		int mask = 0;
+		for ( int m = -reach; m <= reach; m++ )
+			{
+			int index = 12 * year + (month - 1) + m;
+			int y = Math.floorDiv(index, 12), mm = Math.floorMod(index, 12) + 1;
+			for ( int refMask = mask(ref, y, mm, depth + 1); refMask != 0; refMask &= refMask - 1 )
+				{
+				int ymd = Ymd.of(y, mm, Integer.numberOfTrailingZeros(refMask) + 1);
+				TradingDays td = TradingDays.covering(ymd);
+				int n = td.rank(ymd);
+				boolean marketDay = td.isMarketDay(ymd);
+				if ( offset > 0 ) n += marketDay ? offset : offset - 1;
+				else n += offset;
+				if ( n < 0 || n >= td.size())
+					continue;
+				int day = td.day(n);
+				if ( day >= monthStart && day < monthStart + dim )
+					mask |= 1 << (Ymd.dom(day) - 1);
+				}
+			}
+		return mask;
+		}
+
+	/** @return the events on yyyymmdd; shared, do not modify */
+	RecurringEvent[] eventsOn(int yyyymmdd)
+		{
+		return month(Ymd.year(yyyymmdd), Ymd.month(yyyymmdd))[Ymd.dom(yyyymmdd)];
+		}
+
+	/**
+	* @return the dates from the first through the last that have events,
+	* each mapped to its events, in date order
+	*/
+	NavigableMap<Integer, List<RecurringEvent>> eventsBetween(int fromYmd, int toYmd)
+		{
+		NavigableMap<Integer, List<RecurringEvent>> map
+		                             = new TreeMap<Integer, List<RecurringEvent>>();
+		for ( int year = Ymd.year(fromYmd), month = Ymd.month(fromYmd);
+		      Ymd.of(year, month, 1) <= toYmd;
+		      year += month / 12, month = month % 12 + 1 )
+			{
+			RecurringEvent[][] table = month(year, month);
+			for ( int dom = 1; dom < table.length; dom++ )
+				{
+				int ymd = Ymd.of(year, month, dom);
+				if ( table[dom].length > 0 && ymd >= fromYmd && ymd <= toYmd )
+					map.put(ymd, Collections.unmodifiableList(Arrays.asList(table[dom])));
+				}
+			}
+		return map;
+		}
+	}
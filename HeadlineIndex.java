@@ -0,0 +1,391 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)HeadlineIndex.java 1.00 20261018
+*
+* HeadlineIndex: An inverted index over the DailyData headlines, to find
+* the days whose news mentions a word, several words or a phrase without
+* scanning every day's notes.
+*
+* Each headline is split into terms - runs of letters and digits, lower
+* cased, so "Fed's" gives "fed" and "s" and a ticker "AAPL" gives "aapl".
+* Every term maps to a posting list: the sorted rows (day ordinals in the
+* DailyColumns the index was built from) whose headlines hold it. An AND
+* intersects lists, smallest first; an OR merges them; a phrase is the
+* AND of its terms, kept only where one headline has them in order.
+* The query syntax of search() is
+*
+*		fed rate            both terms
+*		fed OR ecb          either (OR binds looser than AND)
+*		"rate cut" fed      the phrase and the term
+*
+* and a date range may be given to restrict the days:
+*
+*		HeadlineIndex index = HeadlineIndex.current();
+*		int[] rows = index.search("\"rate cut\" OR downgrade", 20080101, 20131231);
+*		int[] dates = index.dates(rows);
+*
+* An index is immutable. current() is kept up to date with DailyData: it
+* is rebuilt when the history is (re)loaded, and extended when refresh()
+* appends days - the new rows are simply added to the ends of their terms'
+* lists.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class HeadlineIndex
+	{
+	public static final String MODULE = "HeadlineIndex";
+	private static final int[] NONE = new int[0];
+
+	private static volatile HeadlineIndex _current = null;
+	static
+		{
+		DailyData.addListener(new DailyDataListener()
+			{
+			public void dataLoaded(DailyColumns data) { _current = new HeadlineIndex(data); }
+			public void daysAppended(DailyColumns data, int first, int end)
+				{
+				HeadlineIndex it = _current;
+				_current = (it != null && it.fSize == first) ? it.appended(data, first, end)
+				                                             : new HeadlineIndex(data);
+				}
+			});
+		}
+
+	private final DailyColumns fData;
+	private final int fSize; // rows indexed, which may be fewer than fData holds
+	private final Map<String, int[]> fPostings;
+
+	/** A posting list being built */
+	private static final class Postings
+		{
+		int[] rows = new int[4];
+		int size = 0;
+
+		/** Adds row, unless it was the last added */
+		void add(int row)
+			{
+			if ( size > 0 && rows[size - 1] == row )
+				return;
+			if ( size == rows.length )
+				rows = Arrays.copyOf(rows, 2 * size);
+			rows[size++] = row;
+			}
+		}
+
+	/** @return the index of the loaded history, loading it if necessary */
+	public static HeadlineIndex current()
+		{
+		HeadlineIndex it = _current;
+		DailyColumns data = DailyData.columns();
+		if ( it == null || it.fData != data )
+			{
+			it = new HeadlineIndex(data);
+			_current = it;
+			}
+		return it;
+		}
+
+	/** Indexes every row of data */
+	public HeadlineIndex(DailyColumns data)
+		{
+		long start = Metrics.start();
+		Map<String, int[]> lists = new HashMap<String, int[]>();
+		for ( Map.Entry<String, Postings> e : addRows(data, 0, data.size()).entrySet())
+			lists.put(e.getKey(), Arrays.copyOf(e.getValue().rows, e.getValue().size));
+		fData = data;
+		fSize = data.size();
+		fPostings = lists;
+		Metrics.loaded(MODULE + ".build", fSize, start);
+		}
+
+	private HeadlineIndex(DailyColumns data, int size, Map<String, int[]> postings)
+		{
+		fData = data;
+		fSize = size;
+		fPostings = postings;
+		}
+
+	/** @return this index extended with rows first through end - 1 of data */
+	HeadlineIndex appended(DailyColumns data, int first, int end)
+		{
+		Map<String, int[]> lists = new HashMap<String, int[]>(fPostings);
+		for ( Map.Entry<String, Postings> e : addRows(data, first, end).entrySet())
+			{
+			int[] old = lists.get(e.getKey());
+			Postings added = e.getValue();
+			if ( old == null )
+				lists.put(e.getKey(), Arrays.copyOf(added.rows, added.size));
+			else
+				{
+				int[] both = Arrays.copyOf(old, old.length + added.size);
+				System.arraycopy(added.rows, 0, both, old.length, added.size);
+				lists.put(e.getKey(), both);
+				}
+			}
+		return new HeadlineIndex(data, end, lists);
+		}
+
+	/** @return the posting lists of the terms of the rows */
+	private static Map<String, Postings> addRows(DailyColumns data, int first, int end)
+		{
+		Map<String, Postings> lists = new HashMap<String, Postings>();
+		for ( int row = first; row < end; row++ )
+			{
+			String notes = data.notes(row);
+			if ( notes.isEmpty())
+				continue;
+			for ( String term : terms(notes))
+				{
+				Postings list = lists.get(term);
+				if ( list == null )
+					lists.put(term, list = new Postings());
+				list.add(row);
+				}
+			}
+		return lists;
+		}
+
+	/** @return the terms of text, in order, lower cased */
+	static List<String> terms(String text)
+		{
+		List<String> terms = new ArrayList<String>();
+		int n = text.length();
+		for ( int i = 0; i < n; )
+			{
+			while ( i < n && !Character.isLetterOrDigit(text.charAt(i)))
+				++i;
+			int start = i;
+			while ( i < n && Character.isLetterOrDigit(text.charAt(i)))
+				++i;
+			if ( i > start )
+				terms.add(text.substring(start, i).toLowerCase());
+			}
+		return terms;
+		}
+
+	/** @return the history the rows index */
+	public DailyColumns columns() { return fData; }
+
+	/** @return the number of rows indexed */
+	public int size() { return fSize; }
+
+	/** @return the number of distinct terms */
+	public int terms() { return fPostings.size(); }
+
+	/** @return the yyyymmdd of each row */
+	public int[] dates(int[] rows)
+		{
+		int[] dates = new int[rows.length];
+		for ( int i = 0; i < rows.length; i++ )
+			dates[i] = fData.yyyymmdd(rows[i]);
+		return dates;
+		}
+
+	/**
+	* @return the rows from lo up to hi whose headlines hold term; may be
+	* shared, do not modify
+	*/
+	private int[] postings(String term, int lo, int hi)
+		{
+		int[] it = fPostings.get(term.toLowerCase());
+		if ( it == null )
+			return NONE;
+		int from = lowerBound(it, lo), to = lowerBound(it, hi);
+		return (from == 0 && to == it.length) ? it : Arrays.copyOfRange(it, from, to);
+		}
+
+	/** @return the rows whose headlines hold every one of the words */
+	public int[] allOf(String... words)
+		{
+		List<String> terms = new ArrayList<String>();
+		for ( String word : words )
+			terms.addAll(terms(word));
+		return intersect(terms, 0, fSize);
+		}
+
+	/** @return the rows whose headlines hold any of the words */
+	public int[] anyOf(String... words)
+		{
+		int[] rows = NONE;
+		for ( String word : words )
+			rows = union(rows, allOf(word));
+		return rows;
+		}
+
+	/** @return the rows with a headline holding the phrase's terms in order */
+	public int[] phrase(String phrase)
+		{
+		return phrase(phrase, 0, fSize);
+		}
+
+	private int[] phrase(String phrase, int lo, int hi)
+		{
+		List<String> terms = terms(phrase);
+		int[] rows = intersect(terms, lo, hi);
+		if ( terms.size() < 2 )
+			return rows;
+		int kept = 0;
+		int[] matches = new int[rows.length];
+		for ( int row : rows )
+			if ( hasPhrase(fData.notes(row), terms))
+				matches[kept++] = row;
+		return Arrays.copyOf(matches, kept);
+		}
+
+	private static boolean hasPhrase(String notes, List<String> phrase)
+		{
+		for ( String headline : notes.split(";"))
+			{
+			List<String> terms = terms(headline);
+			if ( terms.size() >= phrase.size()
+			&&   Collections.indexOfSubList(terms, phrase) >= 0 )
+				return true;
+			}
+		return false;
+		}
+
+	/**
+	* @return the rows matching query, in date order: terms separated by
+	* spaces must all match, quoted phrases must match in order, and OR
+	* separates alternatives
+	*/
+	public int[] search(String query)
+		{
+		return search(query, 0, fSize, Metrics.start());
+		}
+
+	/**
+	* @return the rows matching query dated from the first date through the
+	* last; only the posting lists within the dates are read
+	*/
+	public int[] search(String query, int fromYmd, int toYmd)
+		{
+		long start = Metrics.start();
+		int[] range = fData.range(fromYmd, toYmd);
+		return search(query, range[0], Math.min(range[1], fSize), start);
+		}
+
+	private int[] search(String query, int lo, int hi, long start)
+		{
+		int[] rows = NONE;
+		for ( String alternative : query.split("\\s+OR\\s+"))
+			rows = union(rows, searchAll(alternative, lo, hi));
+		Metrics.timed(MODULE + ".search", start);
+		return rows;
+		}
+
+	/** @return the rows from lo up to hi matching every term and phrase of an AND clause */
+	private int[] searchAll(String clause, int lo, int hi)
+		{
+		List<int[]> lists = new ArrayList<int[]>();
+		List<String> words = new ArrayList<String>();
+		String[] pieces = clause.split("\"", -1); // odd pieces were quoted
+		for ( int i = 0; i < pieces.length; i++ )
+			if ( i % 2 == 1 )
+				lists.add(phrase(pieces[i], lo, hi));
+			else
+				words.addAll(terms(pieces[i]));
+		if ( !words.isEmpty())
+			lists.add(intersect(words, lo, hi));
+		if ( lists.isEmpty())
+			return NONE;
+		int[] rows = lists.get(0);
+		for ( int i = 1; i < lists.size(); i++ )
+			rows = intersect(rows, lists.get(i));
+		return rows;
+		}
+
+	/** @return the rows of rows (sorted) dated from the first date through the last */
+	public int[] within(int[] rows, int fromYmd, int toYmd)
+		{
+		int[] range = fData.range(fromYmd, toYmd);
+		int from = lowerBound(rows, range[0]);
+		int to = lowerBound(rows, Math.min(range[1], fSize));
+		return Arrays.copyOfRange(rows, from, Math.max(from, to));
+		}
+
+	/** @return the rows from lo up to hi whose headlines hold all the terms */
+	private int[] intersect(List<String> terms, int lo, int hi)
+		{
+		if ( terms.isEmpty())
+			return NONE;
+		int[][] lists = new int[terms.size()][];
+		for ( int i = 0; i < lists.length; i++ )
+			lists[i] = postings(terms.get(i), lo, hi);
+		Arrays.sort(lists, (a, b) -> a.length - b.length); // smallest first
+		int[] rows = lists[0];
+		for ( int i = 1; i < lists.length && rows.length > 0; i++ )
+			rows = intersect(rows, lists[i]);
+		return (rows == lists[0]) ? rows.clone() : rows;
+		}
+
+	/**
+	* @return the rows in both sorted lists: each row of the shorter is
+	* sought in the longer by galloping from where the last was found
+	*/
+	static int[] intersect(int[] a, int[] b)
+		{
+		if ( a.length > b.length ) { int[] t = a; a = b; b = t; }
+		int[] both = new int[a.length];
+		int n = 0, at = 0;
+		for ( int row : a )
+			{
+			int step = 1, hi = at;
+			while ( hi < b.length && b[hi] < row )
+				{
+				at = hi + 1;
+				hi += step;
+				step <<= 1;
+				}
+			at = lowerBound(b, at, Math.min(hi + 1, b.length), row);
+			if ( at == b.length )
+				break;
+			if ( b[at] == row )
+				both[n++] = row;
+			}
+		return Arrays.copyOf(both, n);
+		}
+
+	/** @return the rows in either sorted list */
+	static int[] union(int[] a, int[] b)
+		{
+		if ( a.length == 0 ) return b;
+		if ( b.length == 0 ) return a;
+		int[] either = new int[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while ( i < a.length && j < b.length )
+			{
+			if ( a[i] < b[j] ) either[n++] = a[i++];
+			else if ( a[i] > b[j] ) either[n++] = b[j++];
+			else { either[n++] = a[i++]; j++; }
+			}
+		while ( i < a.length ) either[n++] = a[i++];
+		while ( j < b.length ) either[n++] = b[j++];
+		return Arrays.copyOf(either, n);
+		}
+
+	private static int lowerBound(int[] a, int key)
+		{
+		return lowerBound(a, 0, a.length, key);
+		}
+
+	/** @return the first index in [lo, hi) whose value is not less than key, else hi */
+	private static int lowerBound(int[] a, int lo, int hi, int key)
+		{
+		while ( lo < hi )
+			{
+			int mid = (lo + hi) >>> 1;
+			if ( a[mid] < key ) lo = mid + 1;
+			else hi = mid;
+			}
+		return lo;
+		}
+	}
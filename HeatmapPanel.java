@@ -0,0 +1,472 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)HeatmapPanel.java 1.00 20261018
+*
+* HeatmapPanel: A month, or a whole year, of the almanac at a glance.
+* Each day's cell is shaded by the day's GAIN (or INDP when cash is not
+* shown) - green up, red down, stronger for bigger moves relative to the
+* rest of the year - and marked with its holiday or early close and its
+* number of recurring events. Weekends and holidays are left dark.
+*
+* The cells of a year come from one Timeline of the year, a single pass
+* over the in-memory DailyColumns, EventCatalog and holiday calendar,
+* built on a background thread. The years most recently shown are cached,
+* along with the years either side of the one on screen, so that paging
+* back and forth costs only the painting. The cache is dropped when
+* DailyData loads or appends, or the event catalog or holiday calendar
+* changes. A year that cannot be built is shown as unavailable, and not
+* tried again until the cache is dropped.
+*
+* Clicking a day selects it, firing DATE_PROPERTY_NAME with the day as a
+* yyyymmdd Integer; the mouse wheel pages by month or year.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 bug fix: early closes were never marked
+* 20261018 bug fix: a year that failed to build was retried on every paint
+*******************************************************/
+import com.shanebow.util.SBFormat;
+import com.shanebow.util.SBLog;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.*;
+
+public class HeatmapPanel
+	extends JPanel
+	implements DailyDataListener
+	{
+	public static final String MODULE = "HeatmapPanel";
+	public static final String DATE_PROPERTY_NAME = "heatmapDate";
+	public static final int MONTH = 0;
+	public static final int YEAR  = 1;
+	private static final long serialVersionUID = 1L;
+
+	private static final int CACHED_YEARS = 8;
+	private static final String[] MONTH_NAMES =
+		{
+		"January", "February", "March", "April", "May", "June", "July",
+		"August", "September", "October", "November", "December"
+		};
+	private static final String DAY_LETTERS = "SMTWTFS";
+	private static final Color BASE    = new Color(  48,  48,  48 );
+	private static final Color CLOSED  = new Color(  24,  24,  24 );
+	private static final Color UP      = new Color(  40, 210,  40 );
+	private static final Color DOWN    = new Color( 220,  40,  40 );
+	private static final Color HOLIDAY = new Color( 255, 160,   0 );
+	private static final Color TEXT    = new Color( 204, 204, 255 );
+	private static final Font  SMALL   = new Font("SansSerif", Font.PLAIN, 9);
+
+	private static final ExecutorService _builder = Executors.newSingleThreadExecutor(r ->
+		{
+		Thread thread = new Thread(r, MODULE + " builder");
+		thread.setDaemon(true);
+		return thread;
+		});
+
+	/** A year's cells, worked out once from a Timeline of the year */
+	private static final class YearCells
+		{
+		final Timeline timeline; // row = day of the year - 1
+		final Color[] gain;      // null where there is no data
+		final Color[] indp;
+
+		YearCells(Timeline aTimeline)
+			{
+			timeline = aTimeline;
+			gain = shades(aTimeline, DailyData.GAIN);
+			indp = shades(aTimeline, DailyData.INDP);
+			}
+
+		/** @return field's shade for each row, scaled by the year's largest move */
+		private static Color[] shades(Timeline t, byte field)
+			{
+			int n = t.size();
+			int scale = 0;
+			for ( int row = 0; row < n; row++ )
+				if ( t.hasData(row))
+					scale = Math.max(scale, Math.abs(t.get(row, field)));
+			Color[] shades = new Color[n];
+			for ( int row = 0; row < n; row++ )
+				if ( t.hasData(row))
+					shades[row] = shade(t.get(row, field), scale);
+			return shades;
+			}
+		}
+
+	private int m_view = MONTH;
+	private int m_year;
+	private int m_month; // 1 - 12, the month shown or the one selected in a year
+	private int m_selected;
+	private int m_maxDate = Integer.MAX_VALUE;
+	private boolean m_displayCash = true;
+
+	// the cache, used only on the EDT
+	private final Map<Integer, YearCells> m_years
+		= new LinkedHashMap<Integer, YearCells>(16, 0.75f, true)
+			{
+			@Override protected boolean removeEldestEntry(Map.Entry<Integer, YearCells> eldest)
+				{
+				return size() > CACHED_YEARS;
+				}
+			};
+	private final Set<Integer> m_building = new HashSet<Integer>();
+	private final Set<Integer> m_failed = new HashSet<Integer>(); // until invalidated
+	private int m_generation = 0;
+	private EventIndex m_events = null;         // the ones the cache was built from
+	private MarketCalendar m_calendar = null;
+
+	public HeatmapPanel()
+		{
+		super(null);
+		setBackground(Color.BLACK);
+		setOpaque(true);
+		setToolTipText(""); // registers for getToolTipText(MouseEvent)
+		setDate(Ymd.today());
+		MouseAdapter mouse = new MouseAdapter()
+			{
+			@Override public void mouseClicked(MouseEvent e)
+				{
+				int ymd = dateAt(e.getX(), e.getY());
+				if ( ymd != 0 )
+					select(ymd);
+				}
+			@Override public void mouseWheelMoved(MouseWheelEvent e)
+				{
+				page(e.getWheelRotation() > 0 ? 1 : -1);
+				}
+			};
+		addMouseListener(mouse);
+		addMouseWheelListener(mouse);
+		}
+
+	/** Shows MONTH or YEAR */
+	public void setView(int view)
+		{
+		if ( view != MONTH && view != YEAR )
+			throw new IllegalArgumentException("view " + view);
+		m_view = view;
+		repaint();
+		}
+	public int getView() { return m_view; }
+
+	/** Selects yyyymmdd and shows its month or year, without firing */
+	public void setDate(int yyyymmdd)
+		{
+		m_selected = yyyymmdd;
+		m_year = Ymd.year(yyyymmdd);
+		m_month = Ymd.month(yyyymmdd);
+		repaint();
+		}
+
+	/** Pages forward (n > 0) or back n months, or years in the year view */
+	public void page(int n)
+		{
+		int index = 12 * m_year + (m_month - 1) + ((m_view == YEAR) ? 12 * n : n);
+		m_year = Math.floorDiv(index, 12);
+		m_month = Math.floorMod(index, 12) + 1;
+		repaint();
+		}
+
+	/** Days after yyyymmdd are shown without their data; 0 for no limit */
+	public void setMaxDate(int yyyymmdd)
+		{
+		m_maxDate = (yyyymmdd == 0) ? Integer.MAX_VALUE : yyyymmdd;
+		repaint();
+		}
+
+	/** Shades by GAIN when on, by INDP when off */
+	public void setShowCash(boolean on)
+		{
+		m_displayCash = on;
+		repaint();
+		}
+
+	@Override public void addNotify()
+		{
+		super.addNotify();
+		DailyData.addListener(this);
+		}
+
+	@Override public void removeNotify()
+		{
+		DailyData.removeListener(this);
+		super.removeNotify();
+		}
+
+	public void dataLoaded(DailyColumns data) { invalidateLater(); }
+	public void daysAppended(DailyColumns data, int first, int end) { invalidateLater(); }
+
+	private void invalidateLater()
+		{
+		SwingUtilities.invokeLater(new Runnable()
+			{
+			public void run() { invalidateCells(); repaint(); }
+			});
+		}
+
+	private void invalidateCells()
+		{
+		m_years.clear();
+		m_building.clear();
+		m_failed.clear();
+		++m_generation;
+		}
+
+	private void select(int yyyymmdd)
+		{
+		int old = m_selected;
+		m_selected = yyyymmdd;
+		m_month = Ymd.month(yyyymmdd);
+		repaint();
+		firePropertyChange(DATE_PROPERTY_NAME, Integer.valueOf(old), Integer.valueOf(yyyymmdd));
+		}
+
+	/**
+	* @return the year's cells, or null while they are built in the
+	* background, when the panel is repainted, or if the build failed; a
+	* failed year is not tried again until the cache is invalidated
+	*/
+	private YearCells cells(final int year)
+		{
+		YearCells it = m_years.get(year);
+		if ( it != null || m_failed.contains(year) || !m_building.add(year))
+			return it;
+		final int generation = m_generation;
+		_builder.submit(new Runnable()
+			{
+			public void run()
+				{
+				YearCells built = null;
+				try { built = new YearCells(Timeline.build(Ymd.of(year, 1, 1), Ymd.of(year, 12, 31))); }
+				catch (Exception e) { SBLog.format( "%s.cells(%d): %s\n", MODULE, year, e.toString()); }
+				final YearCells cells = built;
+				SwingUtilities.invokeLater(new Runnable()
+					{
+					public void run()
+						{
+						if ( generation != m_generation )
+							return;
+						m_building.remove(year);
+						if ( cells != null )
+							m_years.put(year, cells);
+						else
+							m_failed.add(year);
+						repaint();
+						}
+					});
+				}
+			});
+		return null;
+		}
+
+	/** Drops the cache if the event catalog or holiday calendar has changed */
+	private void checkSources()
+		{
+		EventIndex events = EventCatalog.index();
+		MarketCalendar calendar = Holidays.calendar();
+		if ( events != m_events || calendar != m_calendar )
+			{
+			invalidateCells();
+			m_events = events;
+			m_calendar = calendar;
+			}
+		}
+
+	@Override protected void paintComponent(Graphics g)
+		{
+		super.paintComponent(g);
+		checkSources();
+		Graphics2D g2 = (Graphics2D)g;
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		YearCells cells = cells(m_year);
+		if ( m_view == YEAR )
+			{
+			for ( int month = 1; month <= 12; month++ )
+				paintMonth(g2, monthBounds(month), m_year, month, cells, false);
+			cells(m_year - 1); // prefetch the years paged to
+			cells(m_year + 1);
+			}
+		else
+			{
+			paintMonth(g2, monthBounds(m_month), m_year, m_month, cells, true);
+			if ( m_month == 1 ) cells(m_year - 1);
+			if ( m_month == 12 ) cells(m_year + 1);
+			}
+		}
+
+	/** @return where month goes in the current view */
+	private Rectangle monthBounds(int month)
+		{
+		Insets in = getInsets();
+		int w = getWidth() - in.left - in.right;
+		int h = getHeight() - in.top - in.bottom;
+		if ( m_view == MONTH )
+			return new Rectangle(in.left + 2, in.top + 2, w - 4, h - 4);
+		int cw = w / 4, ch = h / 3;
+		int i = month - 1;
+		return new Rectangle(in.left + (i % 4) * cw + 3, in.top + (i / 4) * ch + 3,
+		                     cw - 6, ch - 6);
+		}
+
+	private static int titleHeight(boolean large) { return large ? 20 : 13; }
+	private static int headerHeight(boolean large) { return large ? 16 : 11; }
+
+	/** @return the cell of dom in a month drawn in r */
+	private static Rectangle cellBounds(Rectangle r, int year, int month, int dom, boolean large)
+		{
+		int top = r.y + titleHeight(large) + headerHeight(large);
+		int cw = r.width / 7;
+		int ch = (r.y + r.height - top) / 6;
+		int slot = Ymd.dayOfWeek(Ymd.of(year, month, 1)) - 1 + dom - 1;
+		return new Rectangle(r.x + (slot % 7) * cw, top + (slot / 7) * ch, cw, ch);
+		}
+
+	/** @return the date under x, y, or 0 if none */
+	private int dateAt(int x, int y)
+		{
+		boolean large = (m_view == MONTH);
+		int first = large ? m_month : 1;
+		int last = large ? m_month : 12;
+		for ( int month = first; month <= last; month++ )
+			{
+			Rectangle r = monthBounds(month);
+			if ( !r.contains(x, y))
+				continue;
+			for ( int dom = Ymd.daysInMonth(m_year, month); dom > 0; dom-- )
+				if ( cellBounds(r, m_year, month, dom, large).contains(x, y))
+					return Ymd.of(m_year, month, dom);
+			}
+		return 0;
+		}
+
+	private void paintMonth(Graphics2D g, Rectangle r, int year, int month,
+	                        YearCells cells, boolean large)
+		{
+		g.setColor(TEXT);
+		g.setFont(large ? getFont().deriveFont(Font.BOLD, 13f) : SMALL.deriveFont(Font.BOLD));
+		FontMetrics fm = g.getFontMetrics();
+		String title = large ? MONTH_NAMES[month - 1] + " " + year : MONTH_NAMES[month - 1];
+		g.drawString(title, r.x + (r.width - fm.stringWidth(title)) / 2,
+		             r.y + titleHeight(large) - fm.getDescent() - 2);
+
+		g.setFont(large ? getFont().deriveFont(11f) : SMALL);
+		fm = g.getFontMetrics();
+		int cw = r.width / 7;
+		int headerBase = r.y + titleHeight(large) + headerHeight(large) - fm.getDescent() - 1;
+		for ( int d = 0; d < 7; d++ )
+			{
+			String letter = DAY_LETTERS.substring(d, d + 1);
+			g.drawString(letter, r.x + d * cw + (cw - fm.stringWidth(letter)) / 2, headerBase);
+			}
+
+		if ( cells == null )
+			{
+			g.setColor(Color.GRAY);
+			Rectangle c = cellBounds(r, year, month, 1, large);
+			g.drawString(m_failed.contains(year) ? "unavailable" : "loading...",
+			             r.x + 2, c.y + fm.getAscent());
+			return;
+			}
+		Timeline t = cells.timeline;
+		Color[] shades = m_displayCash ? cells.gain : cells.indp;
+		int dim = Ymd.daysInMonth(year, month);
+		for ( int dom = 1; dom <= dim; dom++ )
+			{
+			int ymd = Ymd.of(year, month, dom);
+			int row = t.indexOf(ymd);
+			Rectangle c = cellBounds(r, year, month, dom, large);
+			Color fill = !t.isMarketDay(row) ? CLOSED
+			           : (shades[row] != null && ymd <= m_maxDate) ? shades[row]
+			           : BASE;
+			g.setColor(fill);
+			g.fillRect(c.x + 1, c.y + 1, c.width - 2, c.height - 2);
+
+			boolean early = (t.flags(row) & Timeline.EARLY_CLOSE) != 0;
+			if ( early || t.holiday(row) != null )
+				{
+				int s = Math.max(4, Math.min(c.width, c.height) / 3);
+				Polygon corner = new Polygon(new int[] { c.x + c.width - 1 - s, c.x + c.width - 1, c.x + c.width - 1 },
+				                             new int[] { c.y + 1, c.y + 1, c.y + 1 + s }, 3);
+				g.setColor(HOLIDAY);
+				if ( early )
+					g.drawPolygon(corner);
+				else
+					g.fillPolygon(corner);
+				}
+
+			int events = t.eventCount(row);
+			if ( large )
+				{
+				g.setColor(TEXT);
+				g.drawString(Integer.toString(dom), c.x + 3, c.y + fm.getAscent() + 1);
+				if ( events > 0 )
+					{
+					String count = Integer.toString(events);
+					g.setColor(Color.YELLOW);
+					g.drawString(count, c.x + c.width - fm.stringWidth(count) - 3,
+					             c.y + c.height - fm.getDescent() - 2);
+					}
+				}
+			else if ( events > 0 )
+				{
+				g.setColor(Color.YELLOW);
+				g.fillRect(c.x + 2, c.y + c.height - 4, 2, 2);
+				}
+
+			if ( ymd == m_selected )
+				{
+				g.setColor(Color.WHITE);
+				g.drawRect(c.x, c.y, c.width - 1, c.height - 1);
+				}
+			}
+		}
+
+	@Override public String getToolTipText(MouseEvent e)
+		{
+		int ymd = dateAt(e.getX(), e.getY());
+		YearCells cells = (ymd == 0) ? null : m_years.get(Ymd.year(ymd));
+		if ( cells == null )
+			return null;
+		Timeline t = cells.timeline;
+		int row = t.indexOf(ymd);
+		StringBuilder tip = new StringBuilder("<html><b>").append(ymd).append("</b>");
+		if ( t.holiday(row) != null )
+			tip.append(" ").append(t.holiday(row));
+		if ( (t.flags(row) & Timeline.EARLY_CLOSE) != 0 )
+			tip.append(" (early close)");
+		if ( t.hasData(row) && ymd <= m_maxDate )
+			{
+			if ( m_displayCash )
+				tip.append("<br>$ ").append(SBFormat.toDollarString(t.get(row, DailyData.GAIN)));
+			tip.append("<br>DOW ").append(SBFormat.toDollarString(t.get(row, DailyData.INDP)));
+			}
+		int[] ids = t.events(row);
+		if ( ids.length > 0 )
+			{
+			RecurringEvent[] catalog = t.events();
+			for ( int id : ids )
+				tip.append("<br>").append(catalog[id].getDesc());
+			}
+		return tip.toString();
+		}
+
+	/** @return the color for value, relative to the largest move, scale */
+	private static Color shade(int value, int scale)
+		{
+		if ( scale == 0 || value == 0 )
+			return BASE;
+		double t = 0.25 + 0.75 * Math.sqrt(Math.min(1.0, Math.abs((double)value) / scale));
+		Color to = (value < 0) ? DOWN : UP;
+		return new Color((int)(BASE.getRed()   + t * (to.getRed()   - BASE.getRed())),
+		                 (int)(BASE.getGreen() + t * (to.getGreen() - BASE.getGreen())),
+		                 (int)(BASE.getBlue()  + t * (to.getBlue()  - BASE.getBlue())));
+		}
+	}
@@ -5,35 +5,72 @@ package com.wormtrader.almanac;
 *
 * Holiday: Represents a holiday as a date and a name. We track the
 * date as an int in the form yyyymmdd to facilitate binary searches
-* on the Holidays list.
+* on the Holidays list. A holiday with a close time is a short session
+* - the market opens as usual and closes early - rather than a closing.
+* In csv the close time follows the name as hh:mm:
+*
+*		20131129,Day after Thanksgiving,13:00
 *
 * @author Rick Salamone
 * @version 2.00
 * 20130308 rts created
+* 20261018 optional early close time
 *******************************************************/
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class Holiday
 	{
+	private static final Pattern CLOSE_TIME = Pattern.compile(",\\s*(\\d{1,2}):(\\d\\d)\\s*$");
+	public static final int CLOSED = 0; // fClose of a full day closing
+
 	private final int fyyyymmdd;
 	private final String fName;
+	private final int fClose; // minutes past midnight, or CLOSED
 
 	public Holiday(int ayyyymmdd, String aName)
+		{
+		this(ayyyymmdd, aName, CLOSED);
+		}
+
+	/** A short session on ayyyymmdd closing aCloseMinute past midnight */
+	public Holiday(int ayyyymmdd, String aName, int aCloseMinute)
 		{
 		fyyyymmdd = ayyyymmdd;
 		fName = aName;
+		fClose = aCloseMinute;
 		}
 
 	public Holiday(String csv)
 		{
 		String[] pieces = csv.split(",", 2);
 		fyyyymmdd = Integer.parseInt(pieces[0].trim());
-		fName = pieces[1].trim();
+		Matcher m = CLOSE_TIME.matcher(pieces[1]);
+		if ( m.find())
+			{
+			fClose = 60 * Integer.parseInt(m.group(1)) + Integer.parseInt(m.group(2));
+			fName = pieces[1].substring(0, m.start()).trim();
+			}
+		else
+			{
+			fClose = CLOSED;
+			fName = pieces[1].trim();
+			}
 		}
 
-	@Override public String toString() { return "" + fyyyymmdd +"," + fName; }
+	@Override public String toString()
+		{
+		if ( fClose == CLOSED )
+			return "" + fyyyymmdd +"," + fName;
+		return String.format("%d,%s,%d:%02d", fyyyymmdd, fName, fClose / 60, fClose % 60);
+		}
 	@Override public int hashCode() { return fyyyymmdd; }
 	public int yyyymmdd() { return fyyyymmdd; }
 	public String name() { return fName; }
+	/** @return true for a short session, false for a full day closing */
+	public boolean isEarlyClose() { return fClose != CLOSED; }
+	/** @return the early close in minutes past midnight, or CLOSED */
+	public int closeMinute() { return fClose; }
 	@Override public boolean equals(Object that)
 		{
 		return this == that;
@@ -0,0 +1,296 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)HolidayRules.java 1.00 20261018
+*
+* HolidayRules: Generates an exchange's holidays for any year from the
+* rules that define them, so the calendar never runs off the end of a
+* hand maintained list. A rule set is built from:
+*
+*   fixed    a month and day, observed on the friday before when it
+*            falls on a saturday (unless the rule says otherwise) and on
+*            the monday after when it falls on a sunday
+*   nth      the nth given weekday of a month, or the last when n < 0
+*   easter   a day offset from Easter sunday (Good Friday is -2)
+*   closure  a one-off closing on a single date
+*   early    a short session: the market closes early on a fixed date, or
+*            on a day offset from the nth weekday of a month, when that
+*            is a weekday and not a holiday
+*
+* along with the regular session's open and close, in minutes past
+* midnight of the exchange's (and the default) time zone.
+* Each rule may be limited to a range of years. Generated years are
+* cached, and a rule set, once built, may be shared between
+* threads. NYSE is the rule set for the New York Stock Exchange; another
+* exchange's is built the same way and given to MarketCalendars.register.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 reports year cache hits to Metrics
+* 20261018 dropped the CME rule set, whose closings and sessions were
+*          not sourced from any one CME product's schedule
+*******************************************************/
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class HolidayRules
+	{
+	private static final int ANY_YEAR = 0;
+
+	/** A single holiday: the date it is observed in a year, or 0 if none */
+	private static abstract class Rule
+		{
+		final String fName;
+		final int fFromYear;
+		final int fToYear;
+		final int fClose; // Holiday.CLOSED, or an early close
+
+		Rule(String aName, int aFromYear, int aToYear)
+			{
+			this(aName, aFromYear, aToYear, Holiday.CLOSED);
+			}
+
+		Rule(String aName, int aFromYear, int aToYear, int aClose)
+			{
+			fName = aName;
+			fFromYear = aFromYear;
+			fToYear = aToYear;
+			fClose = aClose;
+			}
+
+		final boolean appliesTo(int year)
+			{
+			return (fFromYear == ANY_YEAR || year >= fFromYear)
+			    && (fToYear == ANY_YEAR || year <= fToYear);
+			}
+
+		abstract int dateIn(int year);
+		}
+
+	private final String fName;
+	private int fOpen = 9 * 60 + 30;
+	private int fClose = 16 * 60;
+	private final List<Rule> fRules = new ArrayList<Rule>();
+	private final ConcurrentHashMap<Integer, Holiday[]> fYears
+	                                  = new ConcurrentHashMap<Integer, Holiday[]>();
+
+	public static final HolidayRules NYSE = new HolidayRules("NYSE")
+		.fixed("New Years Day", 1, 1, false, ANY_YEAR, ANY_YEAR)
+		.nth("MLK Day", 1, Calendar.MONDAY, 3, 1998, ANY_YEAR)
+		.nth("Presidents Day", 2, Calendar.MONDAY, 3, 1971, ANY_YEAR)
+		.easter("Good Friday", -2)
+		.nth("Memorial Day", 5, Calendar.MONDAY, -1, 1971, ANY_YEAR)
+		.fixed("Juneteenth", 6, 19, true, 2022, ANY_YEAR)
+		.fixed("Independence Day", 7, 4, true, ANY_YEAR, ANY_YEAR)
+		.nth("Labor Day", 9, Calendar.MONDAY, 1, ANY_YEAR, ANY_YEAR)
+		.nth("Thanksgiving", 11, Calendar.THURSDAY, 4, 1942, ANY_YEAR)
+		.fixed("Christmas", 12, 25, true, ANY_YEAR, ANY_YEAR)
+		.closure("Election Day", 19801104)
+		.closure("Hurricane Gloria", 19850927)
+		.closure("Nixon Funeral", 19940427)
+		.closure("September 11", 20010911)
+		.closure("September 11", 20010912)
+		.closure("September 11", 20010913)
+		.closure("September 11", 20010914)
+		.closure("Reagan Funeral", 20040611)
+		.closure("Ford Funeral", 20070102)
+		.closure("Hurricane Sandy", 20121029)
+		.closure("Hurricane Sandy", 20121030)
+		.closure("Bush Funeral", 20181205)
+		.closure("Carter Funeral", 20250109)
+		.earlyClose("Independence Day Eve", 7, 3, 13 * 60, 1996, ANY_YEAR)
+		.earlyClose("Day after Thanksgiving", 11, Calendar.THURSDAY, 4, 1, 13 * 60, 1993, ANY_YEAR)
+		.earlyClose("Christmas Eve", 12, 24, 13 * 60, 1999, ANY_YEAR);
+
+	public HolidayRules(String aName)
+		{
+		fName = aName;
+		}
+
+	public String name() { return fName; }
+	@Override public String toString() { return fName; }
+	/** @return the regular session's open, in minutes past midnight */
+	public int openMinute()  { return fOpen; }
+	/** @return the regular session's close, in minutes past midnight */
+	public int closeMinute() { return fClose; }
+
+	/** Sets the regular session, in minutes past midnight */
+	public HolidayRules session(int openMinute, int closeMinute)
+		{
+		if ( closeMinute <= openMinute )
+			throw new IllegalArgumentException("session " + openMinute + "-" + closeMinute);
+		fOpen = openMinute;
+		fClose = closeMinute;
+		return this;
+		}
+
+	/**
+	* Adds a holiday on month/dom, moved to the monday after a sunday, and
+	* to the friday before a saturday if observeSaturday
+	*/
+	public HolidayRules fixed(String aName, final int month, final int dom,
+	                          final boolean observeSaturday, int fromYear, int toYear)
+		{
+		return add(new Rule(aName, fromYear, toYear)
+			{
+			int dateIn(int year)
+				{
+				int day = Ymd.toEpochDay(Ymd.of(year, month, dom));
+				switch (Ymd.dayOfWeekOf(day))
+					{
+					case Calendar.SUNDAY:   return Ymd.fromEpochDay(day + 1);
+					case Calendar.SATURDAY: return observeSaturday ? Ymd.fromEpochDay(day - 1) : 0;
+					}
+				return Ymd.fromEpochDay(day);
+				}
+			});
+		}
+
+	/**
+	* Adds a holiday on the nth dayOfWeek (Calendar.SUNDAY..SATURDAY) of
+	* month, counting from the end of the month when n is negative
+	*/
+	public HolidayRules nth(String aName, final int month, final int dayOfWeek,
+	                        final int n, int fromYear, int toYear)
+		{
+		return add(new Rule(aName, fromYear, toYear)
+			{
+			int dateIn(int year)
+				{
+				return Ymd.fromEpochDay(nthDay(year, month, dayOfWeek, n));
+				}
+			});
+		}
+
+	/** @return the epoch day of the nth (or from the end, -nth) dayOfWeek of month */
+	private static int nthDay(int year, int month, int dayOfWeek, int n)
+		{
+		if ( n > 0 )
+			{
+			int first = Ymd.toEpochDay(Ymd.of(year, month, 1));
+			return first + Math.floorMod(dayOfWeek - Ymd.dayOfWeekOf(first), 7) + 7 * (n - 1);
+			}
+		int last = Ymd.toEpochDay(Ymd.of(year, month, Ymd.daysInMonth(year, month)));
+		return last - Math.floorMod(Ymd.dayOfWeekOf(last) - dayOfWeek, 7) + 7 * (n + 1);
+		}
+
+	/** Adds a holiday offset days from Easter sunday */
+	public HolidayRules easter(String aName, final int offset)
+		{
+		return add(new Rule(aName, ANY_YEAR, ANY_YEAR)
+			{
+			int dateIn(int year)
+				{
+				return Ymd.fromEpochDay(Ymd.toEpochDay(easter(year)) + offset);
+				}
+			});
+		}
+
+	/** Adds a one-off closing on yyyymmdd */
+	public HolidayRules closure(String aName, final int yyyymmdd)
+		{
+		return add(new Rule(aName, Ymd.year(yyyymmdd), Ymd.year(yyyymmdd))
+			{
+			int dateIn(int year) { return yyyymmdd; }
+			});
+		}
+
+	/** Adds a short session closing at closeMinute on month/dom */
+	public HolidayRules earlyClose(String aName, final int month, final int dom,
+	                               int closeMinute, int fromYear, int toYear)
+		{
+		return add(new Rule(aName, fromYear, toYear, closeMinute)
+			{
+			int dateIn(int year) { return Ymd.of(year, month, dom); }
+			});
+		}
+
+	/**
+	* Adds a short session closing at closeMinute, offset days after the
+	* nth dayOfWeek of month
+	*/
+	public HolidayRules earlyClose(String aName, final int month, final int dayOfWeek,
+	                               final int n, final int offset, int closeMinute,
+	                               int fromYear, int toYear)
+		{
+		return add(new Rule(aName, fromYear, toYear, closeMinute)
+			{
+			int dateIn(int year)
+				{
+				return Ymd.fromEpochDay(nthDay(year, month, dayOfWeek, n) + offset);
+				}
+			});
+		}
+
+	private HolidayRules add(Rule aRule)
+		{
+		fRules.add(aRule);
+		fYears.clear();
+		return this;
+		}
+
+	/** @return Easter sunday of year (the anonymous Gregorian algorithm) */
+	public static int easter(int year)
+		{
+		int a = year % 19;
+		int b = year / 100;
+		int c = year % 100;
+		int d = b / 4;
+		int e = b % 4;
+		int f = (b + 8) / 25;
+		int g = (b - f + 1) / 3;
+		int h = (19 * a + b - d - g + 15) % 30;
+		int i = c / 4;
+		int k = c % 4;
+		int l = (32 + 2 * e + 2 * i - h - k) % 7;
+		int m = (a + 11 * h + 22 * l) / 451;
+		int month = (h + l - 7 * m + 114) / 31;
+		int dom = (h + l - 7 * m + 114) % 31 + 1;
+		return Ymd.of(year, month, dom);
+		}
+
+	/**
+	* @return the holidays of year in date order, generated once and cached;
+	* the short sessions are among them, after any closing on the same date
+	*/
+	public Holiday[] holidays(int year)
+		{
+		Holiday[] it = fYears.get(year);
+		Metrics.cached("HolidayRules", it != null);
+		if ( it == null )
+			{
+			it = generate(year);
+			fYears.put(year, it);
+			}
+		return it.clone();
+		}
+
+	/** @return the holidays of the years first through last inclusive */
+	public List<Holiday> holidays(int firstYear, int lastYear)
+		{
+		List<Holiday> list = new ArrayList<Holiday>(12 * (lastYear - firstYear + 1));
+		for ( int year = firstYear; year <= lastYear; year++ )
+			for ( Holiday holiday : holidays(year))
+				list.add(holiday);
+		return list;
+		}
+
+	private Holiday[] generate(int year)
+		{
+		List<Holiday> list = new ArrayList<Holiday>();
+		for ( Rule rule : fRules )
+			if ( rule.appliesTo(year))
+				{
+				int ymd = rule.dateIn(year);
+				if ( ymd != 0 && !Ymd.isWeekend(ymd))
+					list.add(new Holiday(ymd, rule.fName, rule.fClose));
+				}
+		Holiday[] it = list.toArray(new Holiday[0]);
+		Arrays.sort(it, (x, y) -> (x.yyyymmdd() != y.yyyymmdd())
+		                        ? Integer.compare(x.yyyymmdd(), y.yyyymmdd())
+		                        : Boolean.compare(x.isEarlyClose(), y.isEarlyClose()));
+		return it;
+		}
+	}
@@ -10,13 +10,15 @@ package com.wormtrader.almanac;
 * @version 2.00
 * 20130308 rts created
 * 20130603 rts data file stored in history root (either web or local)
+* 20261018 date checks answered by a bit set MarketCalendar; added
+*          isMarketDay, nextMarketDay, marketDaysBetween
+* 20261018 holidays generated by HolidayRules for any year, the csv is
+*          loaded on first use as overrides; no more dummy next holiday
+* 20261018 loading moved to MarketCalendars: asynchronous, cached, reloadable
+* 20261018 added earlyClose
 *******************************************************/
-import com.shanebow.web.host.HostFile;
-import com.shanebow.util.SBArray;
 import com.shanebow.util.SBDate;
 import com.shanebow.util.SBLog;
-import com.shanebow.util.SBProperties;
-import com.shanebow.util.TextFile;
 import javax.swing.JTable;
 import javax.swing.table.*;
 
@@ -25,47 +27,43 @@ public final class Holidays
 	{
 	public static final int COL_DATE = 0;
 	public static final int COL_NAME = 1;
-	private static final String MASTER="holidays.csv";
-	private static final SBArray<Holiday> _master = new SBArray<Holiday>(20);
-	private static String filespec(String fname)
+
+	/** @return the NYSE calendar that answers the date checks below */
+	public static MarketCalendar calendar()
 		{
-		String dir = SBProperties.get("tw.bar.file.root");
-		return new java.io.File(dir, fname).getPath();
+		return MarketCalendars.get(MarketCalendars.NYSE);
 		}
 
-	static // public int load( String filespec )
+	static MarketCalendar covering(int yyyymmdd)
 		{
-		String filespec = filespec(MASTER);
-		try
-			{
-//filespec = "http://wormtrader.local/mo/data/history/holidays.csv";
-			log ("Loading holidays from " + filespec);
-			TextFile.thaw( Holiday.class, HostFile.bufferedReader(filespec), _master, false );
-			int size = _master.size();
-			log ( "loaded: %d holidays", size );
-			}
-		catch (Exception e)
-			{
-			System.err.println(filespec + " Error: " + e.toString());
-			}
+		return MarketCalendars.covering(MarketCalendars.NYSE, yyyymmdd);
 		}
 
+	/** @return the first holiday after yyyymmdd */
 	public static int nextHoliday(int yyyymmdd)
-		{
-		int index = _master.binarySearch(yyyymmdd);
-//		_master.dump("search " + yyyymmdd + " = " + index);
-		if (index < 0) index = -index - 1;
-		else ++index; // today is a holiday
-		int size = _master.size();
-		return (index < size)? _master.get(index).yyyymmdd()
-		     : _master.get(size-1).yyyymmdd() + 10000; // create a dummy future holiday
-		}
+		{ return covering(yyyymmdd).nextHoliday(yyyymmdd); }
 
 	public static boolean isHoliday(int yyyymmdd)
-		{ return _master.binarySearch(yyyymmdd) >= 0; }
+		{ return covering(yyyymmdd).isHoliday(yyyymmdd); }
 
 	public static Holiday fetch(int yyyymmdd)
-		{ return _master.bsearch(yyyymmdd); }
+		{ return covering(yyyymmdd).fetch(yyyymmdd); }
+
+	/** @return the short session on yyyymmdd, or null if it closes as usual */
+	public static Holiday earlyClose(int yyyymmdd)
+		{ return covering(yyyymmdd).earlyClose(yyyymmdd); }
+
+	/** @return true if yyyymmdd is neither a weekend nor a holiday */
+	public static boolean isMarketDay(int yyyymmdd)
+		{ return covering(yyyymmdd).isMarketDay(yyyymmdd); }
+
+	/** @return the first market day after yyyymmdd */
+	public static int nextMarketDay(int yyyymmdd)
+		{ return DateWalker.nextMarketDay(yyyymmdd); }
+
+	/** @return the number of market days from the first date through the second */
+	public static int marketDaysBetween(int fromYmd, int toYmd)
+		{ return DateWalker.marketDaysBetween(fromYmd, toYmd); }
 
 	static final String[] columnNames = { "Date", "Name" };
 
@@ -81,12 +79,12 @@ public final class Holidays
 
 	public int getColumnCount() { return columnNames.length; }
 	public String  getColumnName(int c) { return columnNames[c]; }
-	public int getRowCount() { return _master.size(); }
+	public int getRowCount() { return calendar().size(); }
 	public boolean isCellEditable(int r, int c) { return false; }
 
 	public Object getValueAt( int r, int c )
 		{
-		Holiday holiday = _master.get(r);
+		Holiday holiday = calendar().get(r);
 		switch (c)
 			{
 			case COL_DATE:   return holiday.yyyymmdd();
@@ -0,0 +1,299 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)JdbcDailySource.java 1.00 20261018
+*
+* JdbcDailySource: Reads the DailyData history from the [DATA$] sheet,
+* or any table with the same 29 columns, through a JDBC driver. The no
+* argument constructor gives the original ODBC MarketData setup.
+*
+* Connections are pooled rather than opened per lookup: a query borrows
+* an idle connection (checking it is still good), and gives it back when
+* done, up to MAX_IDLE of them; close() closes the idle ones. Each pooled
+* connection keeps the statements prepared on it, and the dates are bound
+* as parameters, never pasted into the SQL. The table name, which cannot
+* be a parameter, is checked when the source is constructed.
+*
+* fetchRange() reads a span of dates with one query and fetchAll() any
+* set of dates with one IN query per 64 dates; last() is a single query
+* limited to one row.
+*
+* @version 1.00
+* 20261018 created from the DailyData JDBC code
+* 20261018 fetchAfter
+* 20261018 reports rejected rows to Metrics
+* 20261018 pooled connections, prepared statements, fetchRange, fetchAll
+*          and a one query last()
+*******************************************************/
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import com.shanebow.util.SBLog;
+
+public final class JdbcDailySource
+	implements DailyDataSource
+	{
+	public static final String MODULE="JdbcDailySource";
+	private static final String DRIVER = "sun.jdbc.odbc.JdbcOdbcDriver";
+	private static final String URL = "jdbc:odbc:MarketData";
+	private static final String TABLE = "[DATA$]";
+	private static final int MAX_IDLE = 4;
+	private static final int VALID_SECONDS = 2;
+	private static final int[] IN_SIZES = { 1, 8, 64 }; // a batch is padded up to one
+
+	private final String fDriver;
+	private final String fUrl;
+	private final String fUser;
+	private final String fPassword;
+	private final String fTable;
+	private final String fSelect;
+	private volatile boolean fDriverLoaded = false;
+	private final ArrayDeque<Session> fIdle = new ArrayDeque<Session>();
+
+	/** A pooled connection and the statements prepared on it */
+	private static final class Session
+		{
+		final Connection conn;
+		private final Map<String, PreparedStatement> fStatements
+		                                   = new HashMap<String, PreparedStatement>();
+
+		Session(Connection aConn) { conn = aConn; }
+
+		PreparedStatement prepare(String sql) throws SQLException
+			{
+			PreparedStatement it = fStatements.get(sql);
+			if ( it == null )
+				{
+				it = conn.prepareStatement(sql);
+				fStatements.put(sql, it);
+				}
+			else it.clearParameters();
+			return it;
+			}
+
+		boolean isUsable()
+			{
+			try { return conn.isValid(VALID_SECONDS); }
+			catch (Throwable t) // not supported by every driver
+				{
+				try { return !conn.isClosed(); }
+				catch (Exception e) { return false; }
+				}
+			}
+
+		void close()
+			{
+			for ( PreparedStatement statement : fStatements.values())
+				try { statement.close(); } catch (Exception e) {}
+			try { conn.close(); } catch (Exception e) {}
+			}
+		}
+
+	/** Binds a prepared statement's parameters */
+	private interface Binder
+		{
+		void bind(PreparedStatement statement) throws SQLException;
+		}
+
+	public JdbcDailySource()
+		{
+		this(DRIVER, URL, "", "", TABLE);
+		}
+
+	/**
+	* @param aDriver driver class to load, or null if the driver
+	*        registers itself
+	* @param aTable the table, a plain or quoted identifier such as [DATA$]
+	*/
+	public JdbcDailySource(String aDriver, String aUrl, String aUser,
+	                       String aPassword, String aTable)
+		{
+		if ( aTable == null || !aTable.matches("[\\w$.\\[\\]\"`]+"))
+			throw new IllegalArgumentException("Bad table name: " + aTable);
+		fDriver = aDriver;
+		fUrl = aUrl;
+		fUser = aUser;
+		fPassword = aPassword;
+		fTable = aTable;
+		fSelect = "SELECT * FROM " + fTable;
+		}
+
+	private Connection connect() throws Exception
+		{
+		if ( fDriver != null && !fDriverLoaded )
+			{
+			Class.forName(fDriver);
+			fDriverLoaded = true;
+			}
+		return DriverManager.getConnection(fUrl, fUser, fPassword);
+		}
+
+	/** @return an idle connection that is still good, else a new one */
+	private Session borrow() throws Exception
+		{
+		while ( true )
+			{
+			Session session;
+			synchronized (fIdle) { session = fIdle.pollFirst(); }
+			if ( session == null )
+				break;
+			if ( session.isUsable())
+				{
+				Metrics.cached(MODULE, true);
+				return session;
+				}
+			session.close();
+			}
+		Metrics.cached(MODULE, false);
+		return new Session(connect());
+		}
+
+	/** Pools session again, unless the pool is full or the session failed */
+	private void giveBack(Session session, boolean ok)
+		{
+		if ( ok )
+			synchronized (fIdle)
+				{
+				if ( fIdle.size() < MAX_IDLE )
+					{
+					fIdle.addFirst(session);
+					return;
+					}
+				}
+		session.close();
+		}
+
+	/** Closes the pooled connections; later queries open new ones */
+	public void close()
+		{
+		List<Session> idle;
+		synchronized (fIdle)
+			{
+			idle = new ArrayList<Session>(fIdle);
+			fIdle.clear();
+			}
+		for ( Session session : idle )
+			session.close();
+		}
+
+	public DailyColumns loadAll() throws Exception
+		{
+		return select(fSelect, 0, 500, statement -> {});
+		}
+
+	public DailyColumns fetchAfter( final int yyyymmdd ) throws Exception
+		{
+		return select(fSelect + " WHERE yyyymmdd > ? ORDER BY yyyymmdd", 0, 16,
+		              statement -> statement.setString(1, String.valueOf(yyyymmdd)));
+		}
+
+	@Override public DailyColumns fetchRange( final int fromYmd, final int toYmd ) throws Exception
+		{
+		return select(fSelect + " WHERE yyyymmdd >= ? AND yyyymmdd <= ? ORDER BY yyyymmdd", 0, 32,
+		              statement ->
+		                {
+		                statement.setString(1, String.valueOf(fromYmd));
+		                statement.setString(2, String.valueOf(toYmd));
+		                });
+		}
+
+	/**
+	* Reads the dates IN_SIZES[last] at a time, each batch padded with its
+	* last date to a size whose statement is already prepared
+	*/
+	@Override public DailyColumns fetchAll( Collection<String> dates ) throws Exception
+		{
+		TreeSet<String> wanted = new TreeSet<String>();
+		for ( String yyyymmdd : dates )
+			wanted.add(yyyymmdd.trim().substring(0, 8));
+		final String[] sorted = wanted.toArray(new String[0]);
+		int most = IN_SIZES[IN_SIZES.length - 1];
+		DailyColumns.Builder all = new DailyColumns.Builder(sorted.length);
+		int[] values = new int[DailyColumns.NUM_FIELDS];
+		for ( int first = 0; first < sorted.length; first += most )
+			{
+			final int from = first;
+			final int count = Math.min(most, sorted.length - first);
+			int size = 0;
+			while ( IN_SIZES[size] < count )
+				++size;
+			final int slots = IN_SIZES[size];
+			StringBuilder sql = new StringBuilder(fSelect).append(" WHERE yyyymmdd IN (?");
+			for ( int i = 1; i < slots; i++ )
+				sql.append(",?");
+			sql.append(") ORDER BY yyyymmdd");
+			DailyColumns batch = select(sql.toString(), 0, count, statement ->
+				{
+				for ( int i = 0; i < slots; i++ )
+					statement.setString(i + 1, sorted[from + Math.min(i, count - 1)]);
+				});
+			for ( int row = 0; row < batch.size(); row++ )
+				all.add(batch, row, values);
+			}
+		return all.build();
+		}
+
+	public DailyColumns fetch( final String yyyymmdd ) throws Exception
+		{
+		DailyColumns it = select(fSelect + " WHERE yyyymmdd = ?", 1, 1,
+		                         statement -> statement.setString(1, yyyymmdd));
+		return (it.size() == 0) ? null : it;
+		}
+
+	public DailyColumns last() throws Exception
+		{
+		DailyColumns it = select(fSelect + " ORDER BY yyyymmdd DESC", 1, 1, statement -> {});
+		return (it.size() == 0) ? null : it;
+		}
+
+	/**
+	* Reads the rows of sql up to the first unusable one
+	* @param maxRows the most rows to read, 0 for all
+	*/
+	private DailyColumns select( String sql, int maxRows, int capacity, Binder binder )
+		throws Exception
+		{
+		DailyColumns.Builder data = new DailyColumns.Builder(capacity);
+		Session session = borrow();
+		boolean ok = false;
+		try
+			{
+			PreparedStatement statement = session.prepare(sql);
+			statement.setMaxRows(maxRows);
+			binder.bind(statement);
+			ResultSet rs = statement.executeQuery();
+			try
+				{
+				double[] values = new double[DailyData.NUM_COLUMNS];
+				int[] fields = new int[DailyColumns.NUM_FIELDS];
+				while(rs.next())
+					{
+					try { readRow( rs, values, fields, data ); }
+					catch (Exception ex)
+						{
+						SBLog.write ( MODULE + ".**" + ex.getMessage());
+						Metrics.rejected(MODULE, ex);
+						break;
+						}
+					}
+				}
+			finally { rs.close(); }
+			ok = true;
+			}
+		finally { giveBack(session, ok); }
+		return data.build();
+		}
+
+	private static int readRow( ResultSet rs, double[] values, int[] fields,
+	                            DailyColumns.Builder into ) throws Exception
+		{
+		for ( int c = 2; c < DailyData.NUM_COLUMNS; c++ )
+			values[c] = rs.getDouble(c);
+		return DailyData.appendRow( rs.getString(1), values,
+		                            rs.getString(DailyData.NUM_COLUMNS), fields, into );
+		}
+	}
@@ -0,0 +1,102 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)JfrMetrics.java 1.00 20261018
+*
+* JfrMetrics: An AlmanacMetrics that emits JDK Flight Recorder events, in
+* the category Almanac, for a recording to show beside the GC, I/O and
+* lock events of the same moments:
+*
+*   com.wormtrader.almanac.Load     enabled   what, rows, duration
+*   com.wormtrader.almanac.Reject   enabled   what, reason
+*   com.wormtrader.almanac.Call     disabled  what, duration - per call,
+*                                             so enable them in the .jfc
+*   com.wormtrader.almanac.Cache    disabled  cache, hit
+*
+* An event that is not enabled in the running recording, or when there is
+* no recording, costs a check and nothing more. Needs JDK 11 (or 8u262).
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+public final class JfrMetrics
+	implements AlmanacMetrics
+	{
+	@Name("com.wormtrader.almanac.Load") @Label("Almanac Load") @Category("Almanac")
+	static final class LoadEvent extends Event
+		{
+		@Label("What") String what;
+		@Label("Rows") int rows;
+		@Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+		}
+
+	@Name("com.wormtrader.almanac.Call") @Label("Almanac Call") @Category("Almanac")
+	@Enabled(false)
+	static final class CallEvent extends Event
+		{
+		@Label("What") String what;
+		@Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+		}
+
+	@Name("com.wormtrader.almanac.Cache") @Label("Almanac Cache") @Category("Almanac")
+	@Enabled(false)
+	static final class CacheEvent extends Event
+		{
+		@Label("Cache") String cache;
+		@Label("Hit") boolean hit;
+		}
+
+	@Name("com.wormtrader.almanac.Reject") @Label("Almanac Reject") @Category("Almanac")
+	static final class RejectEvent extends Event
+		{
+		@Label("What") String what;
+		@Label("Reason") String reason;
+		}
+
+	public void loaded(String what, int rows, long nanos)
+		{
+		LoadEvent e = new LoadEvent();
+		if ( !e.isEnabled())
+			return;
+		e.what = what;
+		e.rows = rows;
+		e.elapsed = nanos;
+		e.commit();
+		}
+
+	public void timed(String what, long nanos)
+		{
+		CallEvent e = new CallEvent();
+		if ( !e.isEnabled())
+			return;
+		e.what = what;
+		e.elapsed = nanos;
+		e.commit();
+		}
+
+	public void cached(String cache, boolean hit)
+		{
+		CacheEvent e = new CacheEvent();
+		if ( !e.isEnabled())
+			return;
+		e.cache = cache;
+		e.hit = hit;
+		e.commit();
+		}
+
+	public void rejected(String what, String reason)
+		{
+		RejectEvent e = new RejectEvent();
+		if ( !e.isEnabled())
+			return;
+		e.what = what;
+		e.reason = reason;
+		e.commit();
+		}
+	}
@@ -0,0 +1,175 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)LatencyHistograms.java 1.00 20261018
+*
+* LatencyHistograms: An AlmanacMetrics that keeps everything in memory -
+* a latency histogram per call, the last load of each kind, hit and miss
+* counts per cache and rejection counts per reason - for report() to
+* print or the getters to inspect.
+*
+* A histogram has a bucket per power of two nanoseconds, so a percentile
+* is good to within a factor of two; the count, mean and maximum are
+* exact. Updates are lock free.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class LatencyHistograms
+	implements AlmanacMetrics
+	{
+	private static final int BUCKETS = 64;
+
+	/** Latencies of one call: bucket b counts nanos in [2^(b-1), 2^b) */
+	private static final class Histogram
+		{
+		final LongAdder[] buckets = new LongAdder[BUCKETS];
+		final LongAdder count = new LongAdder();
+		final LongAdder total = new LongAdder();
+		final AtomicLong max = new AtomicLong();
+
+		Histogram()
+			{
+			for ( int b = 0; b < BUCKETS; b++ )
+				buckets[b] = new LongAdder();
+			}
+
+		void add(long nanos)
+			{
+			nanos = Math.max(0, nanos);
+			buckets[64 - Long.numberOfLeadingZeros(nanos)].increment(); // 0 for 0
+			count.increment();
+			total.add(nanos);
+			long was;
+			while ((was = max.get()) < nanos && !max.compareAndSet(was, nanos))
+				;
+			}
+
+		/** @return the upper bound of the bucket holding the p'th percentile */
+		long percentile(double p)
+			{
+			long n = count.sum();
+			if ( n == 0 )
+				return 0;
+			long rank = (long)Math.ceil(p / 100 * n), seen = 0;
+			for ( int b = 0; b < BUCKETS; b++ )
+				if ((seen += buckets[b].sum()) >= Math.max(1, rank))
+					return Math.min(max.get(), (b >= 63) ? Long.MAX_VALUE : (1L << b) - 1);
+			return max.get();
+			}
+		}
+
+	private final ConcurrentHashMap<String, Histogram> fCalls
+	                                   = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentHashMap<String, long[]> fLoads // {count, rows, nanos} of the last
+	                                   = new ConcurrentHashMap<String, long[]>();
+	private final ConcurrentHashMap<String, LongAdder[]> fCaches // {hits, misses}
+	                                   = new ConcurrentHashMap<String, LongAdder[]>();
+	private final ConcurrentHashMap<String, LongAdder> fRejects
+	                                   = new ConcurrentHashMap<String, LongAdder>();
+
+	public void loaded(String what, int rows, long nanos)
+		{
+		fLoads.merge(what, new long[] { 1, rows, nanos },
+		             (was, now) -> new long[] { was[0] + 1, now[1], now[2] });
+		calls(what).add(nanos);
+		}
+
+	public void timed(String what, long nanos) { calls(what).add(nanos); }
+
+	public void cached(String cache, boolean hit)
+		{
+		LongAdder[] it = fCaches.get(cache);
+		if ( it == null )
+			it = fCaches.computeIfAbsent(cache, k -> new LongAdder[] { new LongAdder(), new LongAdder() });
+		it[hit ? 0 : 1].increment();
+		}
+
+	public void rejected(String what, String reason)
+		{
+		fRejects.computeIfAbsent(what + ": " + reason, k -> new LongAdder()).increment();
+		}
+
+	private Histogram calls(String what)
+		{
+		Histogram it = fCalls.get(what);
+		return (it != null) ? it : fCalls.computeIfAbsent(what, k -> new Histogram());
+		}
+
+	/** @return the number of calls (or loads) of what */
+	public long count(String what)
+		{
+		Histogram it = fCalls.get(what);
+		return (it == null) ? 0 : it.count.sum();
+		}
+
+	/** @return the p'th percentile (0 - 100) latency of what, in nanoseconds */
+	public long percentile(String what, double p)
+		{
+		Histogram it = fCalls.get(what);
+		return (it == null) ? 0 : it.percentile(p);
+		}
+
+	public long hits(String cache)
+		{
+		LongAdder[] it = fCaches.get(cache);
+		return (it == null) ? 0 : it[0].sum();
+		}
+
+	public long misses(String cache)
+		{
+		LongAdder[] it = fCaches.get(cache);
+		return (it == null) ? 0 : it[1].sum();
+		}
+
+	/** @return the number of rows what rejected for reason */
+	public long rejects(String what, String reason)
+		{
+		LongAdder it = fRejects.get(what + ": " + reason);
+		return (it == null) ? 0 : it.sum();
+		}
+
+	public void reset()
+		{
+		fCalls.clear();
+		fLoads.clear();
+		fCaches.clear();
+		fRejects.clear();
+		}
+
+	/** @return a table of everything recorded, a line per item */
+	public String report()
+		{
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%-32s %9s %9s %9s %9s %9s %9s\n",
+		           "calls", "count", "mean us", "p50 us", "p90 us", "p99 us", "max us"));
+		for ( Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(fCalls).entrySet())
+			{
+			Histogram h = e.getValue();
+			long n = h.count.sum();
+			out.append(String.format("%-32s %9d %9.1f %9.1f %9.1f %9.1f %9.1f\n", e.getKey(), n,
+			           (n == 0) ? 0.0 : h.total.sum() / 1000.0 / n, h.percentile(50) / 1000.0,
+			           h.percentile(90) / 1000.0, h.percentile(99) / 1000.0, h.max.get() / 1000.0));
+			}
+		for ( Map.Entry<String, long[]> e : new TreeMap<String, long[]>(fLoads).entrySet())
+			{
+			long[] load = e.getValue();
+			out.append(String.format("load %-27s %9d times, last %d rows in %.1f ms\n",
+			           e.getKey(), load[0], load[1], load[2] / 1e6));
+			}
+		for ( Map.Entry<String, LongAdder[]> e : new TreeMap<String, LongAdder[]>(fCaches).entrySet())
+			{
+			long hits = e.getValue()[0].sum(), misses = e.getValue()[1].sum();
+			out.append(String.format("cache %-26s %9d hits %9d misses %5.1f%%\n", e.getKey(),
+			           hits, misses, (hits + misses == 0) ? 0.0 : 100.0 * hits / (hits + misses)));
+			}
+		for ( Map.Entry<String, LongAdder> e : new TreeMap<String, LongAdder>(fRejects).entrySet())
+			out.append(String.format("rejected %-23s %9d\n", e.getKey(), e.getValue().sum()));
+		return out.toString();
+		}
+	}
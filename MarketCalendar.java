@@ -0,0 +1,280 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)MarketCalendar.java 1.00 20261018
+*
+* MarketCalendar: The days an exchange is closed, held as bit sets with
+* one bit per calendar day - one set for the holidays and one for the
+* weekends - over the years the holiday list spans. That makes the date
+* checks on the hot path single bit tests:
+*
+*   isHoliday, isWeekend, isMarketDay     O(1)
+*   nextHoliday, holidaysBetween          rank/select on the holiday set
+*   fetch (the Holiday with its name)     the holiday's rank indexes a
+*                                         sparse array of Holiday
+*
+* Short sessions (early closes) are held the same way: a bit set and a
+* sparse array of the Holiday giving each one's close. With the regular
+* session of the rules they give the open and close of every day, and a
+* running count of trading minutes before each day of the span makes the
+* trading minutes between two times O(1) as well.
+*
+* The holidays come from HolidayRules for the years of the span, merged
+* with a list of overrides (typically holidays.csv) whose names win on a
+* date both give. Dates outside the span are never holidays, and are
+* weekends by day of week arithmetic. A calendar is immutable once built.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 session times, early closes and trading minute counts
+*******************************************************/
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public final class MarketCalendar
+	{
+	private final String fName;
+	private final HolidayRules fRules;
+	private final List<Holiday> fOverrides;
+	private final int fFirstYear;
+	private final int fLastYear;
+	private final Holiday[] fHolidays; // by date: fHolidays[rank] for a holiday
+	private final Holiday[] fEarly;    // by date: fEarly[rank] for a short session
+	private final DayBitSet fHolidayBits;
+	private final DayBitSet fEarlyBits;
+	private final DayBitSet fWeekendBits;
+	private final int fOpen;  // regular session, minutes past midnight
+	private final int fClose;
+	private final int[] fMinutesBefore; // trading minutes in the span before each day
+
+	/**
+	* A calendar for the years first through last of the holidays the
+	* rules generate plus the overrides, which need not be sorted
+	*/
+	MarketCalendar(HolidayRules aRules, List<Holiday> aOverrides,
+	               int aFirstYear, int aLastYear)
+		{
+		if ( aLastYear < aFirstYear )
+			throw new IllegalArgumentException("years " + aFirstYear + "-" + aLastYear);
+		fName = aRules.name();
+		fRules = aRules;
+		fOverrides = aOverrides;
+		fFirstYear = aFirstYear;
+		fLastYear = aLastYear;
+		List<Holiday> merged = new ArrayList<Holiday>(aOverrides);
+		merged.addAll(aRules.holidays(aFirstYear, aLastYear));
+		Holiday[] holidays = merged.toArray(new Holiday[0]);
+		Arrays.sort(holidays, new Comparator<Holiday>() // stable: overrides first
+			{
+			public int compare(Holiday a, Holiday b)
+				{ return Integer.compare(a.yyyymmdd(), b.yyyymmdd()); }
+			});
+		int first = Ymd.toEpochDay(Ymd.of(aFirstYear, 1, 1));
+		int end = Ymd.toEpochDay(Ymd.of(aLastYear + 1, 1, 1));
+		fHolidayBits = new DayBitSet(first, end);
+		fEarlyBits = new DayBitSet(first, end);
+		fWeekendBits = new DayBitSet(first, end);
+		Holiday[] early = new Holiday[holidays.length];
+		int n = 0, e = 0;
+		int lastDay = Integer.MIN_VALUE;
+		for ( Holiday holiday : holidays )
+			{
+			int day = Ymd.toEpochDay(holiday.yyyymmdd());
+			if ( !fHolidayBits.covers(day) || day == lastDay )
+				continue; // outside the span, or listed twice: keep the first
+			lastDay = day;
+			if ( !holiday.isEarlyClose())
+				{
+				fHolidayBits.set(day);
+				holidays[n++] = holiday;
+				}
+			else if ( !Ymd.isWeekendDay(day))
+				{
+				fEarlyBits.set(day);
+				early[e++] = holiday;
+				}
+			}
+		fHolidays = Arrays.copyOf(holidays, n);
+		fEarly = Arrays.copyOf(early, e);
+		for ( int day = first; day < end; day++ )
+			if ( Ymd.isWeekendDay(day))
+				fWeekendBits.set(day);
+		fHolidayBits.freeze();
+		fEarlyBits.freeze();
+		fWeekendBits.freeze();
+
+		fOpen = aRules.openMinute();
+		fClose = aRules.closeMinute();
+		fMinutesBefore = new int[end - first + 1]; // +1: the count past the span
+		int minutes = 0;
+		for ( int day = first; day < end; day++ )
+			{
+			fMinutesBefore[day - first] = minutes;
+			if ( !fWeekendBits.get(day) && !fHolidayBits.get(day))
+				minutes += sessionLength(day);
+			}
+		fMinutesBefore[end - first] = minutes;
+		}
+
+	/**
+	* @return this calendar if it covers the years either side of yyyymmdd,
+	* otherwise a calendar from the same rules widened to cover them
+	*/
+	MarketCalendar covering(int yyyymmdd)
+		{
+		int year = Ymd.year(yyyymmdd);
+		if ( year > fFirstYear && year < fLastYear )
+			return this;
+		return new MarketCalendar(fRules, fOverrides,
+		                          Math.min(fFirstYear, year - 1), Math.max(fLastYear, year + 1));
+		}
+
+	public String name() { return fName; }
+	@Override public String toString() { return fName + " " + fFirstYear + "-" + fLastYear; }
+	public HolidayRules rules() { return fRules; }
+	public int firstYear() { return fFirstYear; }
+	public int lastYear()  { return fLastYear; }
+
+	/** @return true if yyyymmdd lies within the years of this calendar */
+	public boolean covers(int yyyymmdd)
+		{
+		int year = Ymd.year(yyyymmdd);
+		return year >= fFirstYear && year <= fLastYear;
+		}
+
+	/** @return the number of holidays */
+	public int size() { return fHolidays.length; }
+
+	/** @return the ith holiday in date order */
+	public Holiday get(int i) { return fHolidays[i]; }
+
+	public boolean isHoliday(int yyyymmdd)
+		{
+		return fHolidayBits.get(Ymd.toEpochDay(yyyymmdd));
+		}
+
+	public boolean isWeekend(int yyyymmdd)
+		{
+		int day = Ymd.toEpochDay(yyyymmdd);
+		return fWeekendBits.covers(day) ? fWeekendBits.get(day) : Ymd.isWeekendDay(day);
+		}
+
+	public boolean isMarketDay(int yyyymmdd)
+		{
+		int day = Ymd.toEpochDay(yyyymmdd);
+		if ( !fWeekendBits.covers(day))
+			return !Ymd.isWeekendDay(day);
+		return !fWeekendBits.get(day) && !fHolidayBits.get(day);
+		}
+
+	/** @return the Holiday on yyyymmdd, or null if it is not one */
+	public Holiday fetch(int yyyymmdd)
+		{
+		int day = Ymd.toEpochDay(yyyymmdd);
+		return fHolidayBits.get(day) ? fHolidays[fHolidayBits.rank(day)] : null;
+		}
+
+	/** @return true if yyyymmdd is a short session */
+	public boolean isEarlyClose(int yyyymmdd)
+		{
+		return fEarlyBits.get(Ymd.toEpochDay(yyyymmdd));
+		}
+
+	/** @return the short session on yyyymmdd, or null if it is not one */
+	public Holiday earlyClose(int yyyymmdd)
+		{
+		int day = Ymd.toEpochDay(yyyymmdd);
+		return fEarlyBits.get(day) ? fEarly[fEarlyBits.rank(day)] : null;
+		}
+
+	/** @return the short sessions from the first date through the last */
+	public Holiday[] earlyCloses(int fromYmd, int toYmd)
+		{
+		if ( toYmd < fromYmd )
+			return new Holiday[0];
+		return Arrays.copyOfRange(fEarly, fEarlyBits.rank(Ymd.toEpochDay(fromYmd)),
+		                                  fEarlyBits.rank(Ymd.toEpochDay(toYmd) + 1));
+		}
+
+	/** @return the regular session's open, in minutes past midnight */
+	public int openMinute() { return fOpen; }
+
+	/** @return the regular session's close, in minutes past midnight */
+	public int closeMinute() { return fClose; }
+
+	/** @return the open on yyyymmdd, in minutes past midnight, market day or not */
+	public int openMinute(int yyyymmdd) { return fOpen; }
+
+	/** @return the close on yyyymmdd, early or regular, market day or not */
+	public int closeMinute(int yyyymmdd)
+		{
+		int day = Ymd.toEpochDay(yyyymmdd);
+		return fEarlyBits.get(day) ? fEarly[fEarlyBits.rank(day)].closeMinute() : fClose;
+		}
+
+	/** @return the minutes the market trades on yyyymmdd, 0 when closed */
+	public int sessionMinutes(int yyyymmdd)
+		{
+		return isMarketDay(yyyymmdd) ? sessionLength(Ymd.toEpochDay(yyyymmdd)) : 0;
+		}
+
+	private int sessionLength(int epochDay)
+		{
+		int close = fEarlyBits.get(epochDay) ? fEarly[fEarlyBits.rank(epochDay)].closeMinute()
+		                                     : fClose;
+		return Math.max(0, close - fOpen);
+		}
+
+	/**
+	* @return the trading minutes in the span before an SBDate time (whole
+	* seconds, default time zone)
+	* @throws IllegalArgumentException if the time is outside the span
+	*/
+	public int minutesBefore(long aTime)
+		{
+		int ymd = Ymd.fromTime(aTime);
+		int day = Ymd.toEpochDay(ymd);
+		int offset = day - fWeekendBits.firstDay();
+		if ( offset < 0 || offset >= fMinutesBefore.length - 1 )
+			throw new IllegalArgumentException(ymd + " is outside "
+			                                   + fFirstYear + "-" + fLastYear);
+		int minutes = fMinutesBefore[offset];
+		int session = fMinutesBefore[offset + 1] - minutes;
+		if ( session == 0 )
+			return minutes;
+		int minuteOfDay = (int)((aTime - Ymd.toTime(ymd)) / 60);
+		return minutes + Math.min(session, Math.max(0, minuteOfDay - fOpen));
+		}
+
+	/** @return the trading minutes from one SBDate time up to another */
+	public int tradingMinutes(long fromTime, long toTime)
+		{
+		if ( toTime <= fromTime )
+			return 0;
+		return minutesBefore(toTime) - minutesBefore(fromTime);
+		}
+
+	/** @return the first holiday after yyyymmdd, or 0 if none is in the span */
+	public int nextHoliday(int yyyymmdd)
+		{
+		int day = fHolidayBits.next(Ymd.toEpochDay(yyyymmdd) + 1);
+		return (day == DayBitSet.NONE) ? 0 : Ymd.fromEpochDay(day);
+		}
+
+	/** @return the last holiday before yyyymmdd, or 0 if none is in the span */
+	public int prevHoliday(int yyyymmdd)
+		{
+		int day = fHolidayBits.prev(Ymd.toEpochDay(yyyymmdd));
+		return (day == DayBitSet.NONE) ? 0 : Ymd.fromEpochDay(day);
+		}
+
+	/** @return the number of holidays from the first date through the last */
+	public int holidaysBetween(int fromYmd, int toYmd)
+		{
+		if ( toYmd < fromYmd )
+			return 0;
+		return fHolidayBits.rank(Ymd.toEpochDay(toYmd) + 1)
+		     - fHolidayBits.rank(Ymd.toEpochDay(fromYmd));
+		}
+	}
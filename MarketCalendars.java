@@ -0,0 +1,335 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)MarketCalendars.java 1.00 20261018
+*
+* MarketCalendars: The named exchange calendars - NYSE, the default,
+* which Holidays answers for, and any others registered - and their
+* loading:
+*
+*		MarketCalendars.register(new HolidayRules("XYZ").fixed(...)..., "xyz-holidays.csv");
+*		MarketCalendar xyz = MarketCalendars.get("XYZ");
+*
+* A calendar is generated from its HolidayRules, and then the exchange's
+* csv of overrides (NYSE reads holidays.csv) is loaded from the history
+* root, which may be a web address. A successful load is saved to a local
+* cache directory, and when the history root cannot be read the cached
+* copy is used in its place; failing both the calendar stays as the rules
+* generate it. When a load completes the calendar is rebuilt with the
+* overrides and swapped in, which also retires the TradingDays tables
+* built from the old one.
+*
+* So that the one-off closures are seen or not seen regardless of timing,
+* get() and covering() wait for an exchange's first load to finish before
+* answering - for at most the property tw.almanac.calendarWait in
+* milliseconds, 10 seconds by default. If it takes longer the rules alone
+* are used until it completes, which is logged, and isLoaded() tells.
+* A reload() never blocks: the current calendar stays until it is done.
+*
+*		MarketCalendars.load(MarketCalendars.NYSE).join(); // wait, if need be
+*		MarketCalendars.reload(MarketCalendars.NYSE);      // file edited
+*
+* The cache directory is the property tw.almanac.cache, or .almanac in
+* the user's home.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 reports loads and rejected lines to Metrics
+* 20261018 get() and covering() wait for the first load, added isLoaded
+* 20261018 dropped the unsourced CME calendar
+*******************************************************/
+import com.shanebow.web.host.HostFile;
+import com.shanebow.util.SBLog;
+import com.shanebow.util.SBProperties;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public final class MarketCalendars
+	{
+	private static final String MODULE = "MarketCalendars";
+	public static final String NYSE = "NYSE";
+
+	private static final int DEFAULT_PAST = 1980;
+	private static final int DEFAULT_FUTURE = 10; // years past this one
+	private static final long DEFAULT_WAIT_MS = 10000;
+
+	private static final ConcurrentHashMap<String, Exchange> _exchanges
+	                                   = new ConcurrentHashMap<String, Exchange>();
+	private static final ExecutorService _loader = Executors.newCachedThreadPool(r ->
+		{
+		Thread thread = new Thread(r, MODULE + " loader");
+		thread.setDaemon(true);
+		return thread;
+		});
+
+	static
+		{
+		register(HolidayRules.NYSE, "holidays.csv");
+		}
+
+	private MarketCalendars() {}
+
+	/**
+	* Adds (or replaces) the calendar named by the rules, whose overrides
+	* are read from csvName in the history root
+	*/
+	public static void register(HolidayRules aRules, String csvName)
+		{
+		_exchanges.put(aRules.name(), new Exchange(aRules, csvName));
+		}
+
+	/** @return the names of the registered calendars */
+	public static Set<String> names()
+		{
+		return Collections.unmodifiableSet(new TreeSet<String>(_exchanges.keySet()));
+		}
+
+	/** @return the current calendar of the exchange, starting its load if need be */
+	public static MarketCalendar get(String name)
+		{
+		return exchange(name).calendar();
+		}
+
+	/**
+	* @return the exchange's calendar, widened if need be to cover the
+	* years around yyyymmdd
+	*/
+	public static MarketCalendar covering(String name, int yyyymmdd)
+		{
+		return exchange(name).covering(yyyymmdd);
+		}
+
+	/** @return true once the exchange's overrides have been loaded */
+	public static boolean isLoaded(String name)
+		{
+		return exchange(name).fLoaded;
+		}
+
+	/**
+	* Starts loading the exchange's overrides, unless already started
+	* @return the calendar once the load completes
+	*/
+	public static CompletableFuture<MarketCalendar> load(String name)
+		{
+		return exchange(name).load(false);
+		}
+
+	/**
+	* Rereads the exchange's overrides, swapping in the new calendar once
+	* they are read; until then the current calendar stays in use
+	*/
+	public static CompletableFuture<MarketCalendar> reload(String name)
+		{
+		return exchange(name).load(true);
+		}
+
+	private static Exchange exchange(String name)
+		{
+		Exchange it = _exchanges.get(name);
+		if ( it == null )
+			throw new IllegalArgumentException("No market calendar named " + name);
+		return it;
+		}
+
+	private static final class Exchange
+		{
+		private final HolidayRules fRules;
+		private final String fCsvName;
+		private volatile MarketCalendar fCalendar = null;
+		private CompletableFuture<MarketCalendar> fLoad = null;
+		private volatile boolean fLoaded = false;  // the overrides are in
+		private volatile boolean fWaited = false;  // for the first load
+
+		Exchange(HolidayRules aRules, String aCsvName)
+			{
+			fRules = aRules;
+			fCsvName = aCsvName;
+			}
+
+		MarketCalendar calendar()
+			{
+			awaitFirstLoad();
+			MarketCalendar it = fCalendar;
+			return (it != null)? it : current(Ymd.today());
+			}
+
+		MarketCalendar covering(int yyyymmdd)
+			{
+			awaitFirstLoad();
+			return current(yyyymmdd);
+			}
+
+		/** Waits, once and for a limited time, for the overrides to be loaded */
+		private void awaitFirstLoad()
+			{
+			if ( fWaited )
+				return;
+			long wait = DEFAULT_WAIT_MS;
+			String property = SBProperties.get("tw.almanac.calendarWait");
+			if ( property != null && !property.isEmpty())
+				wait = Long.parseLong(property.trim());
+			try { load(false).get(wait, TimeUnit.MILLISECONDS); }
+			catch (TimeoutException e)
+				{
+				SBLog.format( "%s.%s: not loaded after %dms, using the rules alone for now\n",
+				              MODULE, fRules.name(), wait );
+				}
+			catch (Exception e)
+				{
+				SBLog.format( "%s.%s: load failed, using the rules alone: %s\n",
+				              MODULE, fRules.name(), e.toString());
+				}
+			fWaited = true;
+			}
+
+		/** @return the calendar covering yyyymmdd as it is, without waiting */
+		private MarketCalendar current(int yyyymmdd)
+			{
+			MarketCalendar it = fCalendar;
+			if ( it != null )
+				{
+				int year = Ymd.year(yyyymmdd);
+				if ( year > it.firstYear() && year < it.lastYear())
+					return it;
+				}
+			synchronized (this)
+				{
+				it = fCalendar;
+				if ( it == null )
+					{
+					int year = Ymd.year(yyyymmdd);
+					int thisYear = Ymd.year(Ymd.today());
+					it = new MarketCalendar(fRules, Collections.<Holiday>emptyList(),
+					                        Math.min(DEFAULT_PAST, year - 1),
+					                        Math.max(thisYear + DEFAULT_FUTURE, year + 1));
+					fCalendar = it;
+					load(false);
+					}
+				else
+					{
+					it = it.covering(yyyymmdd);
+					fCalendar = it;
+					}
+				return it;
+				}
+			}
+
+		synchronized CompletableFuture<MarketCalendar> load(boolean again)
+			{
+			if ( fLoad != null && !again )
+				return fLoad;
+			fLoad = CompletableFuture.supplyAsync(() -> readOverrides(), _loader)
+			                         .thenApply(overrides -> swapIn(overrides));
+			return fLoad;
+			}
+
+		private synchronized MarketCalendar swapIn(List<Holiday> overrides)
+			{
+			MarketCalendar old = (fCalendar != null)? fCalendar : current(Ymd.today());
+			MarketCalendar it = new MarketCalendar(fRules, overrides,
+			                                       old.firstYear(), old.lastYear());
+			fCalendar = it;
+			fLoaded = true;
+			SBLog.format( "%s.%s: %d overrides, %d holidays %d-%d\n", MODULE,
+			              fRules.name(), overrides.size(), it.size(), it.firstYear(), it.lastYear());
+			return it;
+			}
+
+		/** @return the overrides from the history root, else the cached copy, else none */
+		private List<Holiday> readOverrides()
+			{
+			long start = Metrics.start();
+			String loaded = MODULE + ".load";
+			String dir = SBProperties.get("tw.bar.file.root");
+			String filespec = new File(dir, fCsvName).getPath();
+			File cached = new File(cacheDir(), fCsvName);
+			List<String> lines;
+			try
+				{
+				lines = readLines(HostFile.bufferedReader(filespec));
+				saveCopy(lines, cached);
+				}
+			catch (Exception e)
+				{
+				SBLog.format( "%s.%s: %s %s\n", MODULE, fRules.name(), filespec, e.toString());
+				loaded = MODULE + ".loadCachedCopy";
+				try { lines = readLines(new BufferedReader(new FileReader(cached))); }
+				catch (Exception ex)
+					{
+					SBLog.format( "%s.%s: no cached copy %s\n", MODULE, fRules.name(), cached);
+					return Collections.<Holiday>emptyList();
+					}
+				}
+			List<Holiday> holidays = new ArrayList<Holiday>(lines.size());
+			for ( String line : lines )
+				{
+				if ( line.isEmpty() || !Character.isDigit(line.charAt(0)))
+					continue;
+				try { holidays.add(new Holiday(line)); }
+				catch (Exception ex)
+					{
+					SBLog.write ( MODULE + "." + fCsvName + " bad line: " + line );
+					Metrics.rejected(MODULE, ex);
+					}
+				}
+			Metrics.loaded(loaded, holidays.size(), start);
+			return holidays;
+			}
+		}
+
+	private static File cacheDir()
+		{
+		String dir = SBProperties.get("tw.almanac.cache");
+		return (dir != null && !dir.isEmpty())? new File(dir)
+		     : new File(System.getProperty("user.home"), ".almanac");
+		}
+
+	private static List<String> readLines(BufferedReader reader)
+		throws Exception
+		{
+		List<String> lines = new ArrayList<String>();
+		try
+			{
+			String line;
+			while ((line = reader.readLine()) != null )
+				lines.add(line.trim());
+			}
+		finally { reader.close(); }
+		return lines;
+		}
+
+	private static void saveCopy(List<String> lines, File file)
+		{
+		try
+			{
+			file.getParentFile().mkdirs();
+			File temp = new File(file.getPath() + ".tmp");
+			PrintWriter out = new PrintWriter(new FileWriter(temp));
+			try
+				{
+				for ( String line : lines )
+					out.println(line);
+				}
+			finally { out.close(); }
+			if ( !temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+				throw new Exception("cannot replace " + file);
+			}
+		catch (Exception e)
+			{
+			SBLog.format( "%s: caching %s: %s\n", MODULE, file, e.toString());
+			}
+		}
+	}
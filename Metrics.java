@@ -0,0 +1,134 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)Metrics.java 1.00 20261018
+*
+* Metrics: Where the almanac reports to the installed AlmanacMetrics, if
+* any. With none installed - the default - each call is one volatile
+* read and start() does not even read the clock:
+*
+*		long start = Metrics.start();
+*		...
+*		Metrics.timed("DailyData.fetch", start);
+*
+* The property tw.almanac.metrics installs a sink on first use: "jfr"
+* for JfrMetrics, "histograms" for LatencyHistograms, or both, separated
+* by a comma. Otherwise install one in code:
+*
+*		LatencyHistograms h = new LatencyHistograms();
+*		Metrics.install(h);
+*		...
+*		SBLog.write(h.report());
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import com.shanebow.util.SBLog;
+import com.shanebow.util.SBProperties;
+
+public final class Metrics
+	{
+	public static final String MODULE = "Metrics";
+	private static volatile AlmanacMetrics _sink = fromProperty();
+
+	private Metrics() {}
+
+	/** Reports to aSink from now on, or to nothing if null */
+	public static void install(AlmanacMetrics aSink) { _sink = aSink; }
+
+	/** @return the installed sink, or null */
+	public static AlmanacMetrics installed() { return _sink; }
+
+	public static boolean enabled() { return _sink != null; }
+
+	/** @return the time now for timed() or loaded(), or 0 when disabled */
+	public static long start()
+		{
+		return (_sink == null) ? 0 : System.nanoTime();
+		}
+
+	/** Reports a call of what begun at start */
+	public static void timed(String what, long start)
+		{
+		AlmanacMetrics sink = _sink;
+		if ( sink != null && start != 0 )
+			sink.timed(what, System.nanoTime() - start);
+		}
+
+	/** Reports a load of what, of rows, begun at start */
+	public static void loaded(String what, int rows, long start)
+		{
+		AlmanacMetrics sink = _sink;
+		if ( sink != null && start != 0 )
+			sink.loaded(what, rows, System.nanoTime() - start);
+		}
+
+	public static void cached(String cache, boolean hit)
+		{
+		AlmanacMetrics sink = _sink;
+		if ( sink != null )
+			sink.cached(cache, hit);
+		}
+
+	public static void rejected(String what, Exception e)
+		{
+		AlmanacMetrics sink = _sink;
+		if ( sink != null )
+			sink.rejected(what, reason(e));
+		}
+
+	/**
+	* @return the exception's message up to any colon, such as "Blank cash
+	* for", or its class if it has no message
+	*/
+	static String reason(Exception e)
+		{
+		String message = e.getMessage();
+		if ( message == null || message.isEmpty())
+			return e.getClass().getSimpleName();
+		int colon = message.indexOf(':');
+		return (colon > 0) ? message.substring(0, colon).trim() : message;
+		}
+
+	/** @return a sink that passes everything on to both a and b */
+	public static AlmanacMetrics tee(final AlmanacMetrics a, final AlmanacMetrics b)
+		{
+		return new AlmanacMetrics()
+			{
+			public void loaded(String what, int rows, long nanos)
+				{ a.loaded(what, rows, nanos); b.loaded(what, rows, nanos); }
+			public void timed(String what, long nanos)
+				{ a.timed(what, nanos); b.timed(what, nanos); }
+			public void cached(String cache, boolean hit)
+				{ a.cached(cache, hit); b.cached(cache, hit); }
+			public void rejected(String what, String reason)
+				{ a.rejected(what, reason); b.rejected(what, reason); }
+			};
+		}
+
+	private static AlmanacMetrics fromProperty()
+		{
+		AlmanacMetrics sink = null;
+		try
+			{
+			String names = SBProperties.get("tw.almanac.metrics");
+			if ( names == null )
+				return null;
+			for ( String name : names.split(","))
+				{
+				AlmanacMetrics it;
+				name = name.trim();
+				if ( name.equalsIgnoreCase("jfr")) it = new JfrMetrics();
+				else if ( name.equalsIgnoreCase("histograms")) it = new LatencyHistograms();
+				else if ( name.isEmpty()) continue;
+				else
+					{
+					SBLog.format( "%s: unknown sink '%s'\n", MODULE, name );
+					continue;
+					}
+				sink = (sink == null) ? it : tee(sink, it);
+				}
+			}
+		catch (Exception e) { SBLog.format( "%s: %s\n", MODULE, e.toString()); }
+		return sink;
+		}
+	}
@@ -18,6 +18,11 @@ package com.wormtrader.almanac;
 *			for ( RecurringEvent evt : RecurringEvent.eventsFor("19590207"))
 *				System.out.println( evt.toString());
 *
+*  Lookups go through an EventIndex, which compiles the rules a month at
+*  a time into a table from day of month to events, so neither eventsFor()
+*  nor eventsBetween(), which maps each date of a range to its events in
+*  one pass, evaluates the rules date by date.
+*
 *  A recurring date currently consists of two parts, the ordinal and the
 *  day code. So if m_ordinal = 2 and the m_day = SUNDAY the event occurs
 *  on the second sunday of the month. In addition to the weekdays, m_day
@@ -25,6 +30,7 @@ package com.wormtrader.almanac;
 *
 *     DAY - day of month: with ordinal = 5 gives 5th day of month
 *     BIZ - business day: with ordinal = 3 gives third biz day of month
+*     MKT - market day:   like BIZ, but skips the (NYSE) Holidays as well
 *     OOA - on or about:  works like DAY, but if the date falls on a weekend,
 *                         it will also return the event for the fri - mon
 *                         that enclose the day.
@@ -35,26 +41,43 @@ package com.wormtrader.almanac;
 *  When m_ordinal is negative, it counts back from end of month, so m_day = TUE and
 *  m_ordinal = -1 indicates that the event recurrs on the last tuesday of the month.
 *  If m_day is DAY and m_ordinal = -3, indicates and event that recurs on the 3rd last
-*  day of month.
+*  day of month. This works for every day code: -1, MKT is the last trading day.
+*
+*  A Q before the day code counts within the quarter instead of the month,
+*  so -1, QMKT is the last trading day of the quarter and 2, QFRI the second
+*  friday of the quarter.
+*
+*  A day code of @ followed by the description of another event in the
+*  catalog makes the ordinal a number of market days from that event:
+*  -1, @Options Expiration is the market day before options expiration,
+*  and 0 the event's own day, or the next market day if it is not one.
 *
-*      NEGATIVE values are NOT (yet) supported for m_ordinal if m_day = BIZ or OOA!
+*  After the description, following a '|', an event may carry optional
+*  fields as key=value pairs separated by ';' - the time of release (hh:mm),
+*  its importance (a number, higher matters more), its source and a link:
 *
-*  TODO:
-*    1) support negative ordinals for m_day = BIZ
-*    2) read events in from file
-*    3) maybe add larger time fields, like quarter to handle recurring events
-*       like last day of quarter, or 2nd friday of the quarter
-*    4) add more fields to the recurring event itself to aid in formatting: things
-*       like the time of the occurance, who does the event, web link, etc.
+*     -1, TUE, Case-Shiller Home Price Index | time=09:00; importance=2; source=S&P
+*
+*  The built in events below are the default catalog; EventCatalog loads
+*  one from a file in the same format, and reloads it when it changes.
 *
 * @author Rick Salamone
 * @version 2.00
 * 20091019 rts created
 * 20130308 rts documentation
+* 20261018 lookups through a compiled, cached per month EventIndex;
+*          added eventsBetween and domMask
+* 20261018 occursOn evaluates domMask: no more shared static Calendar
+* 20261018 optional time, importance, source and link fields; lookups go
+*          to the current EventCatalog
+* 20261018 negative BIZ and OOA ordinals, MKT market days, Q quarter rules,
+*          @ market days relative to another event
+* 20261018 bug fix: occursOn was always false for a relative event
 *******************************************************/
 import com.shanebow.util.SBDate;
 import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.NavigableMap;
 import java.util.Vector;
 
 public final class RecurringEvent
@@ -97,38 +120,94 @@ public final class RecurringEvent
 	private static final int DAY=0; // for m_day, e.g the 20th "day" of the month
 	private static final int OOA=8; // for m_day, e.g "on or around" the 19th of the month
 	private static final int BIZ=9; // for m_day, e.g the 3rd "business day" of the month
+	private static final int MKT=10; // for m_day, e.g the last "market day" of the month
+	private static final int REL=11; // for m_day, market days from another event
 	private static final int EVERY=0; // for m_ordinal, e.g "every" thursday
 	private static final int LAST=-1; // for m_ordinal, e.g "last" thursday in month
-	static GregorianCalendar cal = new GregorianCalendar();
+	public static final int NO_TIME = -1; // for m_time: not given
 
 	public static Vector<RecurringEvent> eventsFor( String yyyymmdd )
 		{
-		Vector<RecurringEvent> v = new Vector<RecurringEvent>(4);
-		int year = Integer.parseInt(yyyymmdd.substring(0,4));
-		int month = Integer.parseInt(yyyymmdd.substring(4,6)) - 1;
-		int dom = Integer.parseInt(yyyymmdd.substring(6,8));
-
-		for ( RecurringEvent recurring : recurringEvents )
-			if ( recurring.occursOn ( year, month, dom ))
-				v.add( recurring );
+		return eventsFor(Integer.parseInt(yyyymmdd.substring(0,8)));
+		}
+
+	public static Vector<RecurringEvent> eventsFor( int yyyymmdd )
+		{
+		long start = Metrics.start();
+		RecurringEvent[] events = EventCatalog.index().eventsOn(yyyymmdd);
+		Vector<RecurringEvent> v = new Vector<RecurringEvent>(Math.max(4, events.length));
+		for ( RecurringEvent recurring : events )
+			v.add( recurring );
+		Metrics.timed("RecurringEvent.eventsFor", start);
 		return v;
 		}
 
+	/**
+	* @return each date from the first through the last that has any
+	* events, mapped to them, in date order
+	*/
+	public static NavigableMap<Integer, List<RecurringEvent>> eventsBetween( int fromYmd, int toYmd )
+		{
+		return EventCatalog.index().eventsBetween(fromYmd, toYmd);
+		}
+
+	/** @return the built in events, the default catalog */
+	static RecurringEvent[] builtIn() { return recurringEvents.clone(); }
+
 	private int    m_ordinal; // 1st, 2nd, ... -1 = last
 	private int    m_day; // day of week
+	private boolean m_quarter = false; // ordinal counts in the quarter
+	private String m_ref = null; // for REL, the other event's description
 	private String m_desc;
+	private int    m_time = NO_TIME; // minutes past midnight
+	private int    m_importance = 0;
+	private String m_source = "";
+	private String m_link = "";
 
 	public RecurringEvent( String csv )
 		{
-		String[] pieces = csv.split( ",", 3 );
+		String[] parts = csv.split( "\\|", 2 );
+		String[] pieces = parts[0].split( ",", 3 );
 		m_ordinal = Integer.parseInt( pieces[0].trim());
 		m_day = dayNumber( pieces[1].trim());
 // System.out.format( " %2d, %2d: %s\n", m_ordinal, m_day, csv );
 		m_desc = pieces[2].trim();
+		if ( parts.length > 1 )
+			for ( String field : parts[1].split(";"))
+				if ( !field.trim().isEmpty())
+					setField( field );
+		}
+
+	private void setField( String field )
+		{
+		String[] pair = field.split( "=", 2 );
+		String key = pair[0].trim().toLowerCase();
+		String value = (pair.length > 1) ? pair[1].trim() : "";
+		if ( key.equals("time"))
+			{
+			String[] hhmm = value.split(":");
+			m_time = 60 * Integer.parseInt(hhmm[0].trim()) + Integer.parseInt(hhmm[1].trim());
+			}
+		else if ( key.equals("importance")) m_importance = Integer.parseInt(value);
+		else if ( key.equals("source"))     m_source = value;
+		else if ( key.equals("link"))       m_link = value;
+		else throw new IllegalArgumentException("unknown field " + key);
 		}
 
 	private int dayNumber( String dayString ) // parse the day string
 		{
+		if ( dayString.charAt(0) == '@' )
+			{
+			m_ref = dayString.substring(1).trim();
+			return REL;
+			}
+		if ( dayString.length() > 1 && Character.toUpperCase(dayString.charAt(0)) == 'Q' )
+			{
+			m_quarter = true;
+			dayString = dayString.substring(1).trim();
+			}
+		if ( dayString.toUpperCase().startsWith("MK"))
+			return MKT;
 		if ( dayString.charAt(0) == 'O' )
 			return OOA; // on or around
 		if ( dayString.charAt(0) == 'B' )
@@ -140,59 +219,162 @@ public final class RecurringEvent
 		return DAY;
 		}
 
+	/**
+	* @return true if the event occurs on year/month/dom; month is zero
+	* based. Stateless and allocation free, so safe from any thread. A
+	* relative event is resolved against the current EventCatalog
+	*/
 	public final boolean occursOn ( int year, int month, int dom ) // zero based month
 		{
-		if ((m_day == DAY) && (m_ordinal > 0 ))
-			return m_ordinal == dom;
+		if ( dom < 1 || dom > 31 )
+			return false;
+		int mask = (m_day == REL) ? EventCatalog.index().domMask(this, year, month + 1)
+		                          : domMask(year, month + 1);
+		return (mask & (1 << (dom - 1))) != 0;
+		}
+
+	/** @return true if the event is a number of market days from another */
+	final boolean isRelative() { return m_day == REL; }
+
+	/** @return true if the event depends on the holiday calendar */
+	final boolean usesMarketDays() { return m_day == MKT || m_day == REL; }
 
-		cal.set ( Calendar.YEAR, year );
-		cal.set ( Calendar.MONTH, month );
+	/** @return for a relative event, the description of the other event */
+	final String reference() { return m_ref; }
 
-		if ((m_day == DAY) && (m_ordinal < 0)) // count back from month end
-			return dom == (cal.getActualMaximum ( Calendar.DAY_OF_MONTH ) + 1 + m_ordinal);
+	/** @return for a relative event, the market days from the other event */
+	final int offset() { return m_ordinal; }
 
-		if ( m_day == BIZ ) // iterate thru dom skipping weekends
+	/**
+	* @return the days of month (1 - 12) on which the event occurs, as a
+	* mask with bit dom - 1 set for each. A relative event needs the other
+	* events of its catalog, so here returns 0; EventIndex resolves it
+	*/
+	final int domMask( int year, int month )
+		{
+		int start = Ymd.toEpochDay(Ymd.of(year, month, 1));
+		int dim = Ymd.daysInMonth(year, month);
+		if ( m_day == REL )
+			return 0;
+		if ( !m_quarter || m_ordinal == EVERY )
+			return scopeMask(start, start + dim, start, dim);
+		int q = month - (month - 1) % 3; // first month of the quarter
+		int qStart = Ymd.toEpochDay(Ymd.of(year, q, 1));
+		int qEnd = Ymd.toEpochDay((q == 10) ? Ymd.of(year + 1, 1, 1) : Ymd.of(year, q + 3, 1));
+		return scopeMask(qStart, qEnd, start, dim);
+		}
+
+	/**
+	* @return the mask of the days in the month starting on epoch day
+	* monthStart picked by the rule counting over the epoch days from
+	* (inclusive) to end (exclusive) - the month itself or its quarter
+	*/
+	private int scopeMask( int from, int end, int monthStart, int dim )
+		{
+		switch ( m_day )
 			{
-//TODO: HANDLE NEGATIVE m_ordinal here ala above code
-			int eventDom = 0;
-			for ( int i = 0; i < m_ordinal; )
+			case DAY:
 				{
-				cal.set ( Calendar.DAY_OF_MONTH, ++eventDom );
-				int dow = cal.get ( Calendar.DAY_OF_WEEK );
-				if ( dow != Calendar.SATURDAY && dow != Calendar.SUNDAY )
-					++i; // next ordinal
+				int day = (m_ordinal > 0) ? from + m_ordinal - 1 : end + m_ordinal;
+				return (day >= from && day < end) ? bit(day - monthStart + 1, dim) : 0;
+				}
+
+			case OOA:
+				{
+				if ( m_ordinal == EVERY )
+					return 0;
+				int day = (m_ordinal > 0) ? from + m_ordinal - 1 : end + m_ordinal;
+				if ( day < from || day >= end )
+					return 0;
+				int dow = Ymd.dayOfWeekOf(day);
+				int first = day, last = day;
+				if ( dow == Calendar.SATURDAY )      { first = day - 1; last = day + 2; }
+				else if ( dow == Calendar.SUNDAY )   { first = day - 2; last = day + 1; }
+				int mask = 0;
+				for ( int d = Math.max(first, from); d <= last && d < end; d++ )
+					mask |= bit(d - monthStart + 1, dim);
+				return mask;
+				}
+
+			case BIZ:
+				{
+				int mask = 0;
+				if ( m_ordinal == EVERY )
+					{
+					for ( int d = monthStart; d < monthStart + dim; d++ )
+						if ( !Ymd.isWeekendDay(d))
+							mask |= bit(d - monthStart + 1, dim);
+					return mask;
+					}
+				int step = (m_ordinal > 0) ? 1 : -1;
+				int count = 0;
+				for ( int d = (m_ordinal > 0) ? from : end - 1; d >= from && d < end; d += step )
+					if ( !Ymd.isWeekendDay(d) && ++count == Math.abs(m_ordinal))
+						return bit(d - monthStart + 1, dim);
+				return 0;
+				}
+
+			case MKT:
+				{
+				int fromYmd = Ymd.fromEpochDay(from);
+				int endYmd = Ymd.fromEpochDay(end);
+				TradingDays td = TradingDays.covering(fromYmd);
+				if ( !td.covers(endYmd))
+					td = TradingDays.covering(endYmd);
+				int first = td.rank(fromYmd);
+				int last = td.rank(endYmd); // exclusive
+				if ( m_ordinal == EVERY )
+					{
+					int mask = 0;
+					for ( int n = first; n < last; n++ )
+						mask |= bit(Ymd.toEpochDay(td.day(n)) - monthStart + 1, dim);
+					return mask;
+					}
+				int n = (m_ordinal > 0) ? first + m_ordinal - 1 : last + m_ordinal;
+				return (n >= first && n < last) ? bit(Ymd.toEpochDay(td.day(n)) - monthStart + 1, dim) : 0;
 				}
-		// System.out.println("biz day #" + m_ordinal + " is dom " + eventDom );
-			return eventDom == dom;
-			}
-		if ( m_day == OOA ) // see if the on or about date falls on the weekend
-			{                 // if so return this event for friday thru monday
-			cal.set ( Calendar.DAY_OF_MONTH, m_ordinal );
-			int dow = cal.get ( Calendar.DAY_OF_WEEK );
-			if ( dow == Calendar.SATURDAY )
-				return (dom >= (m_ordinal - 1)) && (dom <= (m_ordinal + 2));
-			if ( dow == Calendar.SUNDAY )
-				return (dom >= (m_ordinal - 2)) && (dom <= (m_ordinal + 1));
-			return m_ordinal == dom;
 			}
-		else if ( m_ordinal == 0 )
+		int firstDay = from + Math.floorMod(m_day - Ymd.dayOfWeekOf(from), 7); // first m_day
+		if ( m_ordinal == EVERY )
 			{
-			cal.set ( Calendar.DAY_OF_MONTH, dom );
-			return m_day == cal.get ( Calendar.DAY_OF_WEEK );
+			int mask = 0;
+			for ( int d = firstDay; d < end; d += 7 )
+				mask |= bit(d - monthStart + 1, dim);
+			return mask;
 			}
+		int day;
+		if ( m_ordinal > 0 )
+			day = firstDay + 7 * (m_ordinal - 1);
 		else
-			{
-			cal.set ( Calendar.DAY_OF_WEEK, m_day );
-			cal.set ( Calendar.DAY_OF_WEEK_IN_MONTH, m_ordinal );
-			return dom == cal.get ( Calendar.DAY_OF_MONTH );
-			}
+			day = (end - 1) - Math.floorMod(Ymd.dayOfWeekOf(end - 1) - m_day, 7) + 7 * (m_ordinal + 1);
+		return (day >= from && day < end) ? bit(day - monthStart + 1, dim) : 0;
+		}
+
+	private static int bit( int dom, int dim )
+		{
+		return (dom >= 1 && dom <= dim) ? 1 << (dom - 1) : 0;
 		}
 
 	public String getDesc() { return m_desc; }
-	public String toString() { return m_desc + "  ("
+	/** @return the time of release in minutes past midnight, or NO_TIME */
+	public int getTime() { return m_time; }
+	public int getImportance() { return m_importance; }
+	public String getSource() { return m_source; }
+	public String getLink() { return m_link; }
+	public String toString()
+		{
+		if ( m_day == REL )
+			return m_desc + "  (" + ((m_ordinal == 0) ? "on " : Math.abs(m_ordinal)
+			     + ((Math.abs(m_ordinal) == 1) ? " market day " : " market days ")
+			     + ((m_ordinal > 0) ? "after " : "before "))
+			     + m_ref + ")";
+		return m_desc + "  ("
 	     + ordinal() + " "
-			+ ((m_day < 8) ? SBDate.dayName[m_day] : (m_day==OOA)? "OOA" : "biz day")
-			+ ")"; }
+			+ ((m_day < 8) ? SBDate.dayName[m_day] : (m_day==OOA)? "OOA"
+			 : (m_day==MKT)? "market day" : "biz day")
+			+ (m_quarter ? " of quarter" : "")
+			+ ")";
+		}
 
 	public String ordinal()
 		{
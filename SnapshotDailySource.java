@@ -0,0 +1,308 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)SnapshotDailySource.java 1.00 20261018
+*
+* SnapshotDailySource: Reads the DailyData history from a binary snapshot
+* file through a memory map. The file is laid out the way DailyColumns
+* holds the data, so a load is a handful of bulk copies rather than a
+* parse: no per row work and no per row objects. The mapping is kept,
+* and only redone when the file changes, so fetch() and last() cost a
+* binary search and the copy of one row.
+*
+* A snapshot is never rewritten in place, since a reader may have it
+* mapped: export() writes a new file beside it and renames that over the
+* old one, so a mapping of the old file stays whole until it is dropped,
+* and the next map() sees a different file.
+*
+* File layout, big endian:
+*
+*   int  MAGIC, VERSION, rows, noteLength
+*   int  min[25], max[25]
+*   long times[rows]
+*   int  yyyymmdd[rows]
+*   int  field[25][rows]     one column after another, CASH...VNASD
+*   int  noteEnds[rows]      end offset of each row's headlines
+*   byte notes[noteLength]   UTF-8
+*
+* To produce a snapshot from the database or from a csv export:
+*
+*   java com.wormtrader.almanac.SnapshotDailySource daily.bin
+*   java com.wormtrader.almanac.SnapshotDailySource daily.bin data.csv
+*
+* @version 1.00
+* 20261018 created
+* 20261018 fetchAfter
+* 20261018 maps the file once per modification, fetchAfter builds its
+*          rows in place
+* 20261018 bug fix: export() truncated a file that could be mapped; it
+*          now replaces it with an atomic rename
+*******************************************************/
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import com.shanebow.util.SBLog;
+
+public final class SnapshotDailySource
+	implements DailyDataSource
+	{
+	public static final String MODULE="SnapshotDailySource";
+	private static final int MAGIC = 0x414c4d44; // "ALMD"
+	private static final int VERSION = 1;
+	private static final int NUM_FIELDS = DailyColumns.NUM_FIELDS;
+	private static final int HEADER_BYTES = 4 * 4 + 2 * 4 * NUM_FIELDS;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File fFile;
+	private volatile Mapping fMapping = null;
+
+	/** The file mapped, and which file and modification it was */
+	private static final class Mapping
+		{
+		final ByteBuffer buf;
+		final Object key;  // the file's identity, such as its inode; may be null
+		final long modified;
+		final long length;
+
+		Mapping(ByteBuffer aBuf, BasicFileAttributes attributes)
+			{
+			buf = aBuf;
+			key = attributes.fileKey();
+			modified = attributes.lastModifiedTime().toMillis();
+			length = attributes.size();
+			}
+
+		boolean isOf(BasicFileAttributes attributes)
+			{
+			return (key == null || key.equals(attributes.fileKey()))
+			    && modified == attributes.lastModifiedTime().toMillis()
+			    && length == attributes.size();
+			}
+		}
+
+	public SnapshotDailySource(File aFile) { fFile = aFile; }
+	public SnapshotDailySource(String aFilespec) { this(new File(aFilespec)); }
+
+	/**
+	* @return the file mapped, mapping it again only if it changed since;
+	* a buffer of the caller's own, so its position may be moved
+	*/
+	private ByteBuffer map() throws Exception
+		{
+		BasicFileAttributes attributes
+			= Files.readAttributes(fFile.toPath(), BasicFileAttributes.class);
+		Mapping it = fMapping;
+		if ( it == null || !it.isOf(attributes))
+			{
+			RandomAccessFile raf = new RandomAccessFile(fFile, "r");
+			try
+				{
+				FileChannel channel = raf.getChannel();
+				ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if ( buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION )
+					throw new Exception( fFile + " is not a version " + VERSION + " snapshot" );
+				fMapping = it = new Mapping(buf, attributes);
+				}
+			finally { raf.close(); } // the mapping stays valid
+			}
+		return it.buf.duplicate();
+		}
+
+	public DailyColumns loadAll() throws Exception
+		{
+		ByteBuffer buf = map();
+		int rows = buf.getInt(8);
+		int noteLength = buf.getInt(12);
+		int[] min = new int[NUM_FIELDS];
+		int[] max = new int[NUM_FIELDS];
+		buf.position(16);
+		buf.asIntBuffer().get(min).get(max);
+
+		int offset = HEADER_BYTES;
+		long[] times = new long[rows];
+		buf.position(offset);
+		buf.asLongBuffer().get(times);
+		offset += 8 * rows;
+		int[] ymds = new int[rows];
+		offset = ints(buf, offset, ymds);
+		int[][] fields = new int[NUM_FIELDS][rows];
+		for ( int f = 0; f < NUM_FIELDS; f++ )
+			offset = ints(buf, offset, fields[f]);
+		int[] noteEnds = new int[rows];
+		offset = ints(buf, offset, noteEnds);
+		byte[] notes = new byte[noteLength];
+		buf.position(offset);
+		buf.get(notes);
+		return new DailyColumns.Builder(rows, times, ymds, fields, noteEnds, notes, min, max)
+		           .build();
+		}
+
+	private static int ints(ByteBuffer buf, int offset, int[] into)
+		{
+		buf.position(offset);
+		buf.asIntBuffer().get(into);
+		return offset + 4 * into.length;
+		}
+
+	/** Binary searches the mapped dates, copying out only the one row */
+	public DailyColumns fetch( String yyyymmdd ) throws Exception
+		{
+		ByteBuffer buf = map();
+		int rows = buf.getInt(8);
+		int ymdsAt = HEADER_BYTES + 8 * rows;
+		int key = Integer.parseInt(yyyymmdd.trim().substring(0, 8));
+		int lo = 0, hi = rows - 1;
+		while ( lo <= hi )
+			{
+			int mid = (lo + hi) >>> 1;
+			int ymd = buf.getInt(ymdsAt + 4 * mid);
+			if ( ymd < key ) lo = mid + 1;
+			else if ( ymd > key ) hi = mid - 1;
+			else return row(buf, rows, mid);
+			}
+		return null;
+		}
+
+	public DailyColumns fetchAfter( int yyyymmdd ) throws Exception
+		{
+		ByteBuffer buf = map();
+		int rows = buf.getInt(8);
+		int ymdsAt = HEADER_BYTES + 8 * rows;
+		int lo = 0, hi = rows; // first row dated after yyyymmdd
+		while ( lo < hi )
+			{
+			int mid = (lo + hi) >>> 1;
+			if ( buf.getInt(ymdsAt + 4 * mid) <= yyyymmdd ) lo = mid + 1;
+			else hi = mid;
+			}
+		DailyColumns.Builder it = new DailyColumns.Builder(rows - lo);
+		int[] fields = new int[NUM_FIELDS];
+		for ( int row = lo; row < rows; row++ )
+			addRow(buf, rows, row, fields, it);
+		return it.build();
+		}
+
+	public DailyColumns last() throws Exception
+		{
+		ByteBuffer buf = map();
+		int rows = buf.getInt(8);
+		return (rows == 0) ? null : row(buf, rows, rows - 1);
+		}
+
+	private static DailyColumns row(ByteBuffer buf, int rows, int row)
+		{
+		DailyColumns.Builder it = new DailyColumns.Builder(1);
+		addRow(buf, rows, row, new int[NUM_FIELDS], it);
+		return it.build();
+		}
+
+	/** Copies row out of the mapped file into a builder, using fields as scratch space */
+	private static void addRow(ByteBuffer buf, int rows, int row, int[] fields,
+	                           DailyColumns.Builder into)
+		{
+		int ymdsAt = HEADER_BYTES + 8 * rows;
+		int fieldsAt = ymdsAt + 4 * rows;
+		int noteEndsAt = fieldsAt + 4 * rows * NUM_FIELDS;
+		int notesAt = noteEndsAt + 4 * rows;
+		for ( int f = 0; f < NUM_FIELDS; f++ )
+			fields[f] = buf.getInt(fieldsAt + 4 * (f * rows + row));
+		int end = buf.getInt(noteEndsAt + 4 * row);
+		int start = (row == 0) ? 0 : buf.getInt(noteEndsAt + 4 * (row - 1));
+		byte[] notes = new byte[end - start];
+		for ( int i = 0; i < notes.length; i++ )
+			notes[i] = buf.get(notesAt + start + i);
+		into.add(buf.getLong(HEADER_BYTES + 8 * row), buf.getInt(ymdsAt + 4 * row),
+		         fields, new String(notes, UTF8));
+		}
+
+	/**
+	* Writes data to aFile in the layout described above: to a temporary
+	* file in the same directory, which is then renamed over aFile
+	*/
+	public static void export( DailyColumns data, File aFile ) throws Exception
+		{
+		File dir = aFile.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(aFile.getName(), ".tmp", dir);
+		boolean moved = false;
+		try
+			{
+			write(data, temp);
+			Files.move(temp.toPath(), aFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+			                                          StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+			}
+		finally
+			{
+			if ( !moved )
+				temp.delete();
+			}
+		}
+
+	private static void write( DailyColumns data, File aFile ) throws Exception
+		{
+		int rows = data.size();
+		int[] noteEnds = data.rawNoteEnds();
+		int noteLength = (rows == 0) ? 0 : noteEnds[rows - 1];
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		                                            new FileOutputStream(aFile), 1 << 16));
+		try
+			{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(rows);
+			out.writeInt(noteLength);
+			for ( byte f = 0; f < NUM_FIELDS; f++ ) out.writeInt(data.getMin(f));
+			for ( byte f = 0; f < NUM_FIELDS; f++ ) out.writeInt(data.getMax(f));
+			long[] times = data.rawTimes();
+			for ( int i = 0; i < rows; i++ ) out.writeLong(times[i]);
+			writeInts(out, data.rawYmds(), rows);
+			for ( byte f = 0; f < NUM_FIELDS; f++ )
+				writeInts(out, data.rawColumn(f), rows);
+			writeInts(out, noteEnds, rows);
+			if ( noteLength > 0 )
+				out.write(data.rawNotes(), 0, noteLength);
+			}
+		finally { out.close(); }
+		}
+
+	private static void writeInts( DataOutputStream out, int[] values, int count )
+		throws Exception
+		{
+		for ( int i = 0; i < count; i++ )
+			out.writeInt(values[i]);
+		}
+
+	/**
+	* Exports the JDBC source, or the csv file if one is given, to a snapshot.
+	* Usage: SnapshotDailySource snapshot.bin [export.csv]
+	*/
+	public static void main( String[] args )
+		{
+		if ( args.length < 1 )
+			{
+			System.err.println("usage: SnapshotDailySource snapshot.bin [export.csv]");
+			System.exit(1);
+			}
+		try
+			{
+			DailyDataSource from = (args.length > 1) ? new CsvDailySource(args[1])
+			                                         : new JdbcDailySource();
+			DailyColumns data = from.loadAll();
+			export( data, new File(args[0]));
+			SBLog.format( "%s exported %d dates %d - %d to %s\n",
+			              MODULE, data.size(), data.first(), data.last(), args[0] );
+			}
+		catch (Exception e)
+			{
+			System.err.println(MODULE + " Error: " + e.toString());
+			System.exit(2);
+			}
+		}
+	}
@@ -10,6 +10,24 @@ package com.wormtrader.almanac;
 * lime, maroon, navy, olive, purple, red,
 * silver, teal, white, and yellow
 *
+* A day's panel is rendered on a background thread, never the EDT: the
+* calendar shows a placeholder at once, and a burst of date changes (an
+* arrow key held down) is debounced so that only the day it stops on is
+* rendered. A render that is overtaken by a later date is cancelled if it
+* has not started, or its result just cached; a running render is never
+* interrupted, since that would close the snapshot file's channel or spoil
+* a pooled JDBC connection. Rendered days are kept in a small cache, which
+* is cleared when DailyData loads or appends; once a day is shown, the days
+* either side and the same day of the months either side are prefetched.
+*
+* A day is read with DailyData.fetch(), so the tab does not load the whole
+* history by itself; an application that wants the days answered from
+* memory calls preloadHistory() when it starts.
+*
+* Above the day's text, the Day view is the MonthCalendar; the Month and
+* Year views are a HeatmapPanel, which shows each day's move, holiday and
+* event count, and selects the day clicked.
+*
 * @author Rick Salamone
 * 20090901 - created
 * 20091019 rts now a split with a calendar in the top and text in bottom
@@ -18,6 +36,13 @@ package com.wormtrader.almanac;
 * 20130308 rts shows holiday name
 * 20130308 rts added setDate
 * 20130319 rts remembers split and bug fix display first date events
+* 20261018 redisplays when DailyData loads or appends the shown day
+* 20261018 renders off the EDT: debounced, stale requests dropped, rendered
+*          days cached and the neighbouring days and months prefetched
+* 20261018 month and year heatmap views besides the day view
+* 20261018 bug fix: a failed render was cached until the next load
+* 20261018 renders are no longer interrupted; the history load is an
+*          explicit preloadHistory()
 *******************************************************/
 import com.wormtrader.almanac.DailyData;
 import com.wormtrader.almanac.RecurringEvent;
@@ -27,22 +52,59 @@ import com.shanebow.ui.SBSelectable;
 import com.shanebow.ui.SplitPane;
 import com.shanebow.util.SBDate;
 import com.shanebow.util.SBFormat;
+import com.shanebow.util.SBLog;
 import java.awt.*;
 import java.beans.PropertyChangeListener;
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class TabCalendar
 	extends JPanel
-	implements PropertyChangeListener
+	implements PropertyChangeListener, DailyDataListener
 	{
 	public  static final Font FONT = new Font("SansSerif", Font.PLAIN, 12);
 	private final static Color COLOR = new Color( 204, 204, 255 );
+	private static final int DEBOUNCE_MS = 150;
+	private static final int CACHED_DAYS = 120;
+
+	/** One thread renders for every calendar, so the requests queue in order */
+	private static final ExecutorService _renderer = Executors.newSingleThreadExecutor(r ->
+		{
+		Thread thread = new Thread(r, "TabCalendar renderer");
+		thread.setDaemon(true);
+		return thread;
+		});
+	private static volatile boolean _historyPreloaded = false;
 
 	protected MonthCalendar m_monthPanel;
+	protected HeatmapPanel m_heatmap = new HeatmapPanel();
+	private final CardLayout m_cards = new CardLayout();
+	private final JPanel m_views = new JPanel(m_cards);
 	private JLabel lblEventsPanel = new JLabel();
 	private String m_maxDate = null;
-	private boolean m_displayCash = true;
+	private volatile boolean m_displayCash = true;
+	private volatile String m_shown; // the date whose events are displayed
+
+	// the rest are used only on the EDT
+	private final Map<String, String> m_rendered
+		= new LinkedHashMap<String, String>(64, 0.75f, true)
+			{
+			@Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+				{
+				return size() > CACHED_DAYS;
+				}
+			};
+	private final Timer m_debounce = new Timer(DEBOUNCE_MS, e -> render(m_shown));
+	private Future<?> m_pending = null;
+	private final List<Future<?>> m_prefetches = new ArrayList<Future<?>>();
+	private int m_generation = 0; // bumped when the cache is cleared
 
 	public TabCalendar()
 		{
@@ -57,6 +119,12 @@ public class TabCalendar
 		m_monthPanel = new MonthCalendar();
 		m_monthPanel.addPropertyChangeListener(MonthCalendar.TIMECHANGED_PROPERTY_NAME, this);
 		m_monthPanel.setBackground(COLOR);
+		m_heatmap.addPropertyChangeListener(HeatmapPanel.DATE_PROPERTY_NAME, this);
+		m_views.add(m_monthPanel, "Day");
+		m_views.add(m_heatmap, "Heatmap");
+		JPanel top = new JPanel(new BorderLayout());
+		top.add(viewBar(), BorderLayout.NORTH);
+		top.add(m_views, BorderLayout.CENTER);
 
 		lblEventsPanel.setOpaque(true);
 		lblEventsPanel.setFont(FONT);
@@ -65,25 +133,64 @@ public class TabCalendar
 		lblEventsPanel.setForeground(COLOR);
 		lblEventsPanel.setBorder(BorderFactory.createEmptyBorder(0,10,0,0));
 
-		SplitPane splitPane = new SplitPane(SplitPane.VSPLIT, m_monthPanel, 
+		SplitPane splitPane = new SplitPane(SplitPane.VSPLIT, top, 
 		                                     new JScrollPane(lblEventsPanel),
 		                                     "usr.almanac.split", 260);
 		Dimension minimumSize = new Dimension(100, 50);
-		m_monthPanel.setMinimumSize(minimumSize);
+		top.setMinimumSize(minimumSize);
 		lblEventsPanel.setMinimumSize(minimumSize);
 
 		add(splitPane, BorderLayout.CENTER);
+		m_debounce.setRepeats(false);
 		setDate(yyyymmdd);
 		eventsFor(yyyymmdd); // setDate above might not fire a change event
 		}
 
+	/** @return the Day, Month and Year buttons, and buttons to page the heatmap */
+	private JComponent viewBar()
+		{
+		JPanel bar = new JPanel(new FlowLayout(FlowLayout.LEFT, 2, 2));
+		ButtonGroup group = new ButtonGroup();
+		String[] names = { "Day", "Month", "Year" };
+		for ( int i = 0; i < names.length; i++ )
+			{
+			final int view = i - 1; // -1 for the day, else a HeatmapPanel view
+			JToggleButton button = new JToggleButton(names[i], view < 0);
+			button.setMargin(new Insets(1, 6, 1, 6));
+			button.addActionListener(e -> setView(view));
+			group.add(button);
+			bar.add(button);
+			}
+		JButton back = new JButton("<");
+		JButton ahead = new JButton(">");
+		back.setMargin(new Insets(1, 4, 1, 4));
+		ahead.setMargin(new Insets(1, 4, 1, 4));
+		back.addActionListener(e -> m_heatmap.page(-1));
+		ahead.addActionListener(e -> m_heatmap.page(1));
+		bar.add(back);
+		bar.add(ahead);
+		return bar;
+		}
+
+	private void setView(int view)
+		{
+		if ( view < 0 )
+			m_cards.show(m_views, "Day");
+		else
+			{
+			m_heatmap.setView(view);
+			m_cards.show(m_views, "Heatmap");
+			}
+		}
+
 	public void propertyChange(java.beans.PropertyChangeEvent e)
 		{
-		if ( !e.getPropertyName().equals(MonthCalendar.TIMECHANGED_PROPERTY_NAME))
-			return;
-		Object source = e.getSource();
-		long newTime = ((Long)e.getNewValue()).longValue();
-		String yyyymmdd = SBDate.yyyymmdd(newTime);
+		String yyyymmdd;
+		if ( e.getPropertyName().equals(MonthCalendar.TIMECHANGED_PROPERTY_NAME))
+			yyyymmdd = SBDate.yyyymmdd(((Long)e.getNewValue()).longValue());
+		else if ( e.getPropertyName().equals(HeatmapPanel.DATE_PROPERTY_NAME))
+			yyyymmdd = e.getNewValue().toString();
+		else return;
 		setDate(yyyymmdd);
 		if ( m_maxDate != null && yyyymmdd.compareTo(m_maxDate) > 0 )
 			SBDialog.error("Not Permitted", "You cannot view news post " + m_maxDate );
@@ -94,29 +201,220 @@ public class TabCalendar
 	public void setDate(String yyyymmdd)
 		{
 		m_monthPanel.setDate(yyyymmdd);
+		m_heatmap.setDate(Integer.parseInt(yyyymmdd));
 		}
 
 	public void setMaxDate(String yyyymmdd)
 		{
 		m_maxDate = yyyymmdd;
+		m_heatmap.setMaxDate((m_maxDate == null) ? 0 : Integer.parseInt(m_maxDate));
 		if (m_maxDate != null)
 			setDate(yyyymmdd);
 		}
 
-	public void setShowCash(boolean on) { m_displayCash = on; }
+	public void setShowCash(boolean on)
+		{
+		if ( m_displayCash == on )
+			return;
+		m_displayCash = on;
+		m_heatmap.setShowCash(on);
+		redisplay();
+		}
+
+	@Override public void addNotify()
+		{
+		super.addNotify();
+		DailyData.addListener(this);
+		}
+
+	@Override public void removeNotify()
+		{
+		DailyData.removeListener(this);
+		m_debounce.stop();
+		cancelAll();
+		super.removeNotify();
+		}
+
+	public void dataLoaded(DailyColumns data) { redisplay(); }
+
+	public void daysAppended(DailyColumns data, int first, int end)
+		{
+		String shown = m_shown;
+		if ( shown != null && Integer.parseInt(shown) >= data.yyyymmdd(first))
+			redisplay();
+		}
+
+	/**
+	* Drops the rendered days and renders the shown one again, leaving the
+	* old text up until the new is ready
+	*/
+	private void redisplay()
+		{
+		SwingUtilities.invokeLater(new Runnable()
+			{
+			public void run()
+				{
+				m_rendered.clear();
+				++m_generation;
+				if ( m_shown != null ) render(m_shown);
+				}
+			});
+		}
 
-	private long m_time;
 	private void eventsFor( String yyyymmdd )
+		{
+		m_shown = yyyymmdd;
+		String html = m_rendered.get(yyyymmdd);
+		if ( html != null )
+			{
+			m_debounce.stop();
+			lblEventsPanel.setText( html );
+			prefetchAround(yyyymmdd);
+			return;
+			}
+		lblEventsPanel.setText( "<html><h2>" + htmlSpaces(5) + yyyymmdd + "</h2>"
+		                      + htmlColored("gray", "loading...") );
+		m_debounce.restart();
+		}
+
+	/** Starts rendering yyyymmdd, abandoning any render still to do */
+	private void render( final String yyyymmdd )
+		{
+		if ( yyyymmdd == null )
+			return;
+		cancelAll();
+		m_pending = submit(yyyymmdd);
+		}
+
+	/** Renders the neighbours of yyyymmdd that are not already cached */
+	private void prefetchAround( String yyyymmdd )
+		{
+		m_prefetches.removeIf(f -> f.isDone());
+		if ( !m_prefetches.isEmpty())
+			return; // still busy with the last lot
+		int ymd = Integer.parseInt(yyyymmdd);
+		int year = Ymd.year(ymd), month = Ymd.month(ymd), dom = Ymd.dom(ymd);
+		int[] around = { Ymd.addDays(ymd, 1), Ymd.addDays(ymd, -1),
+		                 sameDay(year, month + 1, dom), sameDay(year, month - 1, dom) };
+		for ( int day : around )
+			{
+			String key = Integer.toString(day);
+			if ( !m_rendered.containsKey(key)
+			&&   (m_maxDate == null || key.compareTo(m_maxDate) <= 0))
+				m_prefetches.add(submit(key));
+			}
+		}
+
+	/** @return dom in the month, which may be 0 or 13, or its last day if shorter */
+	private static int sameDay( int year, int month, int dom )
+		{
+		int index = 12 * year + (month - 1);
+		int y = Math.floorDiv(index, 12), m = Math.floorMod(index, 12) + 1;
+		return Ymd.of(y, m, Math.min(dom, Ymd.daysInMonth(y, m)));
+		}
+
+	private Future<?> submit( final String yyyymmdd )
+		{
+		final int generation = m_generation;
+		return _renderer.submit(new Runnable()
+			{
+			public void run()
+				{
+				String text;
+				boolean ok = false;
+				try
+					{
+					text = htmlFor(yyyymmdd);
+					ok = true;
+					}
+				catch (Exception e)
+					{
+					SBLog.format( "TabCalendar.htmlFor(%s): %s\n", yyyymmdd, e.toString());
+					text = "<html><h2>" + htmlSpaces(5) + yyyymmdd + "</h2>"
+					     + htmlColored("RED", "unavailable: " + e.getMessage());
+					}
+				final String html = text;
+				final boolean good = ok;
+				SwingUtilities.invokeLater(new Runnable()
+					{
+					public void run() { rendered(yyyymmdd, html, good, generation); }
+					});
+				}
+			});
+		}
+
+	/**
+	* Shows html if yyyymmdd is still wanted; a failed render is shown but
+	* not cached, so the day is tried again next time
+	*/
+	private void rendered( String yyyymmdd, String html, boolean ok, int generation )
+		{
+		if ( generation != m_generation )
+			return; // rendered from data since replaced
+		if ( ok )
+			m_rendered.put(yyyymmdd, html);
+		if ( yyyymmdd.equals(m_shown))
+			{
+			m_debounce.stop();
+			lblEventsPanel.setText( html );
+			prefetchAround(yyyymmdd);
+			}
+		}
+
+	/**
+	* Drops the renders not yet started; one already running finishes, and
+	* its result is cached, or dropped by the generation check
+	*/
+	private void cancelAll()
+		{
+		if ( m_pending != null )
+			m_pending.cancel(false);
+		m_pending = null;
+		for ( Future<?> prefetch : m_prefetches )
+			prefetch.cancel(false);
+		m_prefetches.clear();
+		}
+
+	/**
+	* Loads the whole history in the background, once, so that the days
+	* are answered from memory rather than a query per day
+	*/
+	public static void preloadHistory()
+		{
+		if ( _historyPreloaded )
+			return;
+		_historyPreloaded = true;
+		Thread loader = new Thread(new Runnable()
+			{
+			public void run()
+				{
+				try { DailyData.columns(); }
+				catch (Exception e) { SBLog.format( "TabCalendar history: %s\n", e.toString()); }
+				}
+			}, "TabCalendar history");
+		loader.setDaemon(true);
+		loader.start();
+		}
+
+	/**
+	* @return the panel text for yyyymmdd: called on the renderer thread, so
+	* it must not touch any component
+	*/
+	private String htmlFor( String yyyymmdd )
 		{
 		int iyyyymmdd = Integer.parseInt(yyyymmdd);
 		String html = "<html><h2>" + htmlSpaces(5) + yyyymmdd;
-		if (Holidays.isHoliday(iyyyymmdd))
-			html += " - " + Holidays.fetch(iyyyymmdd).name();
+		Holiday holiday = Holidays.fetch(iyyyymmdd);
+		if (holiday != null)
+			html += " - " + holiday.name();
+		else if ((holiday = Holidays.earlyClose(iyyyymmdd)) != null)
+			html += String.format(" - %s (closes %d:%02d)", holiday.name(),
+			                      holiday.closeMinute() / 60, holiday.closeMinute() % 60);
 		html += "</h2>";
 html += "Next holiday " + Holidays.nextHoliday(iyyyymmdd) + "<br>";
 
-		m_time = SBDate.toTime(yyyymmdd);
-		if ( m_time < SBDate.timeNow())
+		long time = SBDate.toTime(yyyymmdd);
+		if ( time < SBDate.timeNow())
 			{
 			DailyData dd = DailyData.fetch(yyyymmdd);
 			if ( dd != null )
@@ -159,7 +457,7 @@ html += "Next holiday " + Holidays.nextHoliday(iyyyymmdd) + "<br>";
 			for ( RecurringEvent recurring : rEvents )
 				html += htmlListItem( "YELLOW", recurring.toString());
 			}
-		lblEventsPanel.setText( html );
+		return html;
 		}
 
 	private String ddInternals( DailyData dd, byte field, String label )
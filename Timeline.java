@@ -0,0 +1,347 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)Timeline.java 1.00 20261018
+*
+* Timeline: The almanac joined by date - one row for every calendar day
+* of a range with its market day flags, holiday name, recurring events
+* and DailyData fields - built in one pass instead of the three lookups
+* per date TabCalendar makes, and held in columns:
+*
+*   ymd[row]              yyyymmdd
+*   flags[row]            MARKET_DAY | EARLY_CLOSE | HAS_DATA
+*   holiday(row)          the name of the holiday or early close, or null
+*   events(row)           ids of the day's recurring events: indexes into
+*                         events(), the catalog when the timeline was built
+*   get(row, field)       the DailyData field, 0 when the day has no data
+*
+* Each year of the range is built as a separate chunk, in parallel, from
+* the current DailyColumns snapshot, EventCatalog and holiday calendar;
+* the chunks are then laid end to end. The result can be written as csv
+* or as a binary file:
+*
+*		Timeline t = Timeline.build(20000101, 20131231);
+*		t.writeCsv(new File("almanac.csv"));
+*
+*		java com.wormtrader.almanac.Timeline 20000101 20131231 almanac.bin
+*
+* Binary layout, big endian:
+*
+*   int  MAGIC, VERSION, rows, eventIds, catalogSize
+*   UTF  catalog[catalogSize]       event descriptions, by id
+*   int  ymd[rows]
+*   byte flags[rows]
+*   int  eventEnds[rows]            end offset of each row's ids
+*   int  eventId[eventIds]
+*   int  field[25][rows]            one column after another
+*   int  holidays, then (int row, UTF name) for each
+*
+* @version 1.00
+* 20261018 created
+* 20261018 added eventCount
+* 20261018 bug fix: early closes had no holiday name
+*******************************************************/
+import com.shanebow.util.SBLog;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+public final class Timeline
+	{
+	public static final String MODULE="Timeline";
+	public static final int MARKET_DAY  = 1;
+	public static final int EARLY_CLOSE = 2;
+	public static final int HAS_DATA    = 4;
+	private static final int MAGIC = 0x414c4d54; // "ALMT"
+	private static final int VERSION = 1;
+	private static final int NUM_FIELDS = DailyColumns.NUM_FIELDS;
+	private static final String[] FIELD_NAMES =
+		{
+		"CASH", "GAIN", "CG", "MTI", "VIX", "TY", "EURO", "YEN", "INDU", "INDP",
+		"NCMP", "R2000", "SPX", "ANYSE", "DNYSE", "UNYSE", "HNYSE", "LNYSE", "VNYSE",
+		"ANASD", "DNASD", "UNASD", "HNASD", "LNASD", "VNASD"
+		};
+
+	private final RecurringEvent[] fCatalog;
+	private final int     fSize;
+	private final int[]   fYmds;
+	private final byte[]  fFlags;
+	private final String[] fHolidays;
+	private final int[]   fEventEnds;
+	private final int[]   fEventIds;
+	private final int[][] fFields;
+
+	/** One year (or less) of the range, built on its own */
+	private static final class Chunk
+		{
+		final int size;
+		final int[] ymds;
+		final byte[] flags;
+		final String[] holidays;
+		final int[] eventEnds; // relative to this chunk's ids
+		int[] eventIds;
+		int eventCount = 0;
+		final int[][] fields;
+
+		Chunk(int aSize)
+			{
+			size = aSize;
+			ymds = new int[aSize];
+			flags = new byte[aSize];
+			holidays = new String[aSize];
+			eventEnds = new int[aSize];
+			eventIds = new int[2 * aSize];
+			fields = new int[NUM_FIELDS][aSize];
+			}
+
+		void addEvent(int id)
+			{
+			if ( eventCount == eventIds.length )
+				eventIds = Arrays.copyOf(eventIds, 2 * eventCount);
+			eventIds[eventCount++] = id;
+			}
+		}
+
+	/**
+	* Builds the timeline for every day from the first date through the
+	* last, loading DailyData if need be
+	*/
+	public static Timeline build(int fromYmd, int toYmd)
+		{
+		if ( toYmd < fromYmd )
+			throw new IllegalArgumentException("range " + fromYmd + "-" + toYmd);
+		final DailyColumns data = DailyData.columns();
+		final EventIndex events = EventCatalog.index();
+		final RecurringEvent[] catalog = events.rules();
+		final Map<RecurringEvent, Integer> ids = new IdentityHashMap<RecurringEvent, Integer>();
+		for ( int i = 0; i < catalog.length; i++ )
+			ids.put(catalog[i], i);
+		final int firstYear = Ymd.year(fromYmd);
+		final int fromDay = Ymd.toEpochDay(fromYmd);
+		final int toDay = Ymd.toEpochDay(toYmd);
+		MarketCalendars.covering(MarketCalendars.NYSE, fromYmd);
+		final MarketCalendar holidays = Holidays.covering(toYmd); // spans the range
+		Chunk[] chunks = IntStream.rangeClosed(firstYear, Ymd.year(toYmd)).parallel()
+			.mapToObj(year -> chunk(Math.max(fromDay, Ymd.toEpochDay(Ymd.of(year, 1, 1))),
+			                        Math.min(toDay, Ymd.toEpochDay(Ymd.of(year, 12, 31))),
+			                        data, events, ids, holidays))
+			.toArray(Chunk[]::new);
+		return new Timeline(catalog, chunks);
+		}
+
+	private static Chunk chunk(int fromDay, int toDay, DailyColumns data, EventIndex events,
+	                           Map<RecurringEvent, Integer> ids, MarketCalendar holidays)
+		{
+		Chunk chunk = new Chunk(toDay - fromDay + 1);
+		int row = data.range(Ymd.fromEpochDay(fromDay), Ymd.fromEpochDay(toDay))[0];
+		RecurringEvent[][] month = null;
+		for ( int day = fromDay, i = 0; day <= toDay; day++, i++ )
+			{
+			int ymd = Ymd.fromEpochDay(day);
+			int dom = Ymd.dom(ymd);
+			chunk.ymds[i] = ymd;
+			int flags = 0;
+			if ( holidays.isMarketDay(ymd))
+				flags |= MARKET_DAY;
+			Holiday holiday = holidays.fetch(ymd);
+			if ( holidays.isEarlyClose(ymd))
+				{
+				flags |= EARLY_CLOSE;
+				holiday = holidays.earlyClose(ymd);
+				}
+			if ( holiday != null )
+				chunk.holidays[i] = holiday.name();
+			if ( month == null || dom == 1 )
+				month = events.month(Ymd.year(ymd), Ymd.month(ymd));
+			for ( RecurringEvent event : month[dom] )
+				chunk.addEvent(ids.get(event));
+			chunk.eventEnds[i] = chunk.eventCount;
+			if ( row < data.size() && data.yyyymmdd(row) == ymd )
+				{
+				flags |= HAS_DATA;
+				for ( byte f = 0; f < NUM_FIELDS; f++ )
+					chunk.fields[f][i] = data.get(row, f);
+				++row;
+				}
+			chunk.flags[i] = (byte)flags;
+			}
+		return chunk;
+		}
+
+	private Timeline(RecurringEvent[] aCatalog, Chunk[] chunks)
+		{
+		fCatalog = aCatalog;
+		int size = 0, ids = 0;
+		for ( Chunk chunk : chunks )
+			{
+			size += chunk.size;
+			ids += chunk.eventCount;
+			}
+		fSize = size;
+		fYmds = new int[size];
+		fFlags = new byte[size];
+		fHolidays = new String[size];
+		fEventEnds = new int[size];
+		fEventIds = new int[ids];
+		fFields = new int[NUM_FIELDS][size];
+		int at = 0, idAt = 0;
+		for ( Chunk chunk : chunks )
+			{
+			System.arraycopy(chunk.ymds, 0, fYmds, at, chunk.size);
+			System.arraycopy(chunk.flags, 0, fFlags, at, chunk.size);
+			System.arraycopy(chunk.holidays, 0, fHolidays, at, chunk.size);
+			for ( int i = 0; i < chunk.size; i++ )
+				fEventEnds[at + i] = idAt + chunk.eventEnds[i];
+			System.arraycopy(chunk.eventIds, 0, fEventIds, idAt, chunk.eventCount);
+			for ( int f = 0; f < NUM_FIELDS; f++ )
+				System.arraycopy(chunk.fields[f], 0, fFields[f], at, chunk.size);
+			at += chunk.size;
+			idAt += chunk.eventCount;
+			}
+		}
+
+	public int size()                   { return fSize; }
+	public int yyyymmdd(int row)        { return fYmds[row]; }
+	public int flags(int row)           { return fFlags[row]; }
+	public boolean isMarketDay(int row) { return (fFlags[row] & MARKET_DAY) != 0; }
+	public boolean hasData(int row)     { return (fFlags[row] & HAS_DATA) != 0; }
+	public String holiday(int row)      { return fHolidays[row]; }
+	public int get(int row, byte field) { return fFields[field][row]; }
+
+	/** @return the row of yyyymmdd, or a negative number if outside the range */
+	public int indexOf(int yyyymmdd)
+		{
+		return Arrays.binarySearch(fYmds, yyyymmdd);
+		}
+
+	/** @return the ids of row's recurring events: indexes into events() */
+	public int[] events(int row)
+		{
+		return Arrays.copyOfRange(fEventIds, (row == 0) ? 0 : fEventEnds[row - 1], fEventEnds[row]);
+		}
+
+	/** @return the number of row's recurring events, without copying their ids */
+	public int eventCount(int row)
+		{
+		return fEventEnds[row] - ((row == 0) ? 0 : fEventEnds[row - 1]);
+		}
+
+	/** @return the catalog the event ids index */
+	public RecurringEvent[] events() { return fCatalog.clone(); }
+
+	/**
+	* Writes one line per row: yyyymmdd, market day, early close, holiday,
+	* the event ids separated by ';' and the DailyData fields, which are
+	* empty for a day without data
+	*/
+	public void writeCsv(File file)
+		throws Exception
+		{
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		try
+			{
+			StringBuilder line = new StringBuilder("yyyymmdd,market,early,holiday,events");
+			for ( String name : FIELD_NAMES )
+				line.append(',').append(name);
+			out.println(line);
+			for ( int row = 0; row < fSize; row++ )
+				{
+				line.setLength(0);
+				line.append(fYmds[row])
+				    .append(',').append(isMarketDay(row) ? 1 : 0)
+				    .append(',').append(((fFlags[row] & EARLY_CLOSE) != 0) ? 1 : 0)
+				    .append(',');
+				if ( fHolidays[row] != null )
+					line.append('"').append(fHolidays[row].replace("\"", "\"\"")).append('"');
+				line.append(',');
+				for ( int i = (row == 0) ? 0 : fEventEnds[row - 1]; i < fEventEnds[row]; i++ )
+					{
+					if ( i > ((row == 0) ? 0 : fEventEnds[row - 1])) line.append(';');
+					line.append(fEventIds[i]);
+					}
+				boolean data = hasData(row);
+				for ( int f = 0; f < NUM_FIELDS; f++ )
+					{
+					line.append(',');
+					if ( data ) line.append(fFields[f][row]);
+					}
+				out.println(line);
+				}
+			}
+		finally { out.close(); }
+		if ( out.checkError())
+			throw new Exception("error writing " + file);
+		}
+
+	/** Writes the binary layout described above */
+	public void writeBinary(File file)
+		throws Exception
+		{
+		DataOutputStream out = new DataOutputStream(
+		                 new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try
+			{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(fSize);
+			out.writeInt(fEventIds.length);
+			out.writeInt(fCatalog.length);
+			for ( RecurringEvent event : fCatalog )
+				out.writeUTF(event.getDesc());
+			for ( int ymd : fYmds ) out.writeInt(ymd);
+			out.write(fFlags);
+			for ( int end : fEventEnds ) out.writeInt(end);
+			for ( int id : fEventIds ) out.writeInt(id);
+			for ( int[] column : fFields )
+				for ( int value : column )
+					out.writeInt(value);
+			int holidays = 0;
+			for ( String name : fHolidays )
+				if ( name != null ) ++holidays;
+			out.writeInt(holidays);
+			for ( int row = 0; row < fSize; row++ )
+				if ( fHolidays[row] != null )
+					{
+					out.writeInt(row);
+					out.writeUTF(fHolidays[row]);
+					}
+			}
+		finally { out.close(); }
+		}
+
+	/**
+	* Writes the timeline of a range, as binary if the file name ends in
+	* .bin, otherwise as csv.
+	* Usage: Timeline fromYmd toYmd file
+	*/
+	public static void main( String[] args )
+		{
+		if ( args.length < 3 )
+			{
+			System.err.println("usage: Timeline fromYmd toYmd file[.csv|.bin]");
+			System.exit(1);
+			}
+		try
+			{
+			Timeline timeline = build(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+			File file = new File(args[2]);
+			if ( args[2].endsWith(".bin"))
+				timeline.writeBinary(file);
+			else
+				timeline.writeCsv(file);
+			SBLog.format( "%s wrote %d days to %s\n", MODULE, timeline.size(), file );
+			}
+		catch (Exception e)
+			{
+			System.err.println(MODULE + " Error: " + e.toString());
+			System.exit(2);
+			}
+		}
+	}
@@ -0,0 +1,225 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)TradingDays.java 1.00 20261018
+*
+* TradingDays: A precomputed table of every market day - not a weekend
+* and not a holiday of its MarketCalendar - over a span of years. Built once, it
+* turns the questions DateWalker answers into array arithmetic:
+*
+*   fDays[]  every market day as yyyymmdd, in order, so the nth market
+*            day of the span is fDays[n]
+*   fRank[]  one entry per calendar day of the span: the number of
+*            market days before that day, i.e. where it would go in fDays
+*
+* so next and previous market day, the number of market days between
+* two dates, and the list of days in a range are O(1) lookups with no
+* Calendar, String or Holidays search involved:
+*
+*		TradingDays td = TradingDays.covering(20130101);
+*		int n = td.between(20130101, 20131231);  // 252
+*		int day = td.next(20130328);             // 20130401 - Good Friday
+*
+* Tables are immutable and may be shared between threads. covering()
+* hands out a shared table per calendar (NYSE unless named), rebuilt
+* with a wider span when a date falls outside it, or when the calendar
+* is reloaded; setSpan() fixes the span up front.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 a shared table per named calendar, rebuilt on reload
+*******************************************************/
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class TradingDays
+	{
+	private static final int DEFAULT_PAST = 1980;
+	private static final int DEFAULT_FUTURE = 10; // years past this one
+
+	private static final ConcurrentHashMap<String, TradingDays> _tables
+	                                   = new ConcurrentHashMap<String, TradingDays>();
+
+	private final MarketCalendar fCalendar;
+	private final int fFirstYear;
+	private final int fLastYear;
+	private final int fBase;   // epoch day of Jan 1 of fFirstYear
+	private final int[] fDays; // market days of the span, ascending
+	private final int[] fRank; // fRank[epochDay - fBase] = market days before it
+
+	/**
+	* Builds the NYSE table for the years first through last inclusive,
+	* consulting the calendar once for each weekday
+	*/
+	public static TradingDays forYears(int firstYear, int lastYear)
+		{
+		return forYears(MarketCalendars.NYSE, firstYear, lastYear);
+		}
+
+	/** Builds the table of the named MarketCalendars calendar */
+	public static TradingDays forYears(String calendar, int firstYear, int lastYear)
+		{
+		MarketCalendars.covering(calendar, Ymd.of(firstYear, 1, 1));
+		return new TradingDays(MarketCalendars.covering(calendar, Ymd.of(lastYear, 12, 31)),
+		                       firstYear, lastYear);
+		}
+
+	/**
+	* @return the shared NYSE table, extended if need be to cover yyyymmdd
+	* and the years either side of it, so next() and prev() always have an answer
+	*/
+	public static TradingDays covering(int yyyymmdd)
+		{
+		return covering(MarketCalendars.NYSE, yyyymmdd);
+		}
+
+	/**
+	* @return the shared table of the named calendar, as above; it is
+	* rebuilt when that calendar has been reloaded since it was built
+	*/
+	public static TradingDays covering(String calendar, int yyyymmdd)
+		{
+		TradingDays it = _tables.get(calendar);
+		if ( it != null && it.coversAround(yyyymmdd)
+		&&   it.fCalendar == MarketCalendars.get(calendar))
+			return it;
+		synchronized (_tables)
+			{
+			it = _tables.get(calendar);
+			int year = Ymd.year(yyyymmdd);
+			if ( it == null )
+				{
+				int thisYear = Ymd.year(Ymd.today());
+				it = forYears(calendar, Math.min(DEFAULT_PAST, year - 1),
+				              Math.max(thisYear + DEFAULT_FUTURE, year + 1));
+				}
+			else if ( !it.coversAround(yyyymmdd)
+			     ||   it.fCalendar != MarketCalendars.get(calendar))
+				it = forYears(calendar, Math.min(it.fFirstYear, year - 1),
+				              Math.max(it.fLastYear, year + 1));
+			_tables.put(calendar, it);
+			return it;
+			}
+		}
+
+	/** Sets the span of the shared NYSE table, building it now */
+	public static void setSpan(int firstYear, int lastYear)
+		{
+		setSpan(MarketCalendars.NYSE, firstYear, lastYear);
+		}
+
+	/** Sets the span of the named calendar's shared table, building it now */
+	public static void setSpan(String calendar, int firstYear, int lastYear)
+		{
+		synchronized (_tables)
+			{
+			_tables.put(calendar, forYears(calendar, firstYear, lastYear));
+			}
+		}
+
+	private TradingDays(MarketCalendar aCalendar, int aFirstYear, int aLastYear)
+		{
+		if ( aLastYear < aFirstYear )
+			throw new IllegalArgumentException("years " + aFirstYear + "-" + aLastYear);
+		fCalendar = aCalendar;
+		fFirstYear = aFirstYear;
+		fLastYear = aLastYear;
+		fBase = Ymd.toEpochDay(Ymd.of(aFirstYear, 1, 1));
+		int end = Ymd.toEpochDay(Ymd.of(aLastYear + 1, 1, 1));
+		fRank = new int[end - fBase + 1]; // +1: the rank just past the span
+		int[] days = new int[(end - fBase) * 5 / 7 + 2];
+		int n = 0;
+		for ( int day = fBase; day < end; day++ )
+			{
+			fRank[day - fBase] = n;
+			if ( Ymd.isWeekendDay(day))
+				continue;
+			int ymd = Ymd.fromEpochDay(day);
+			if ( !aCalendar.isHoliday(ymd))
+				days[n++] = ymd;
+			}
+		fRank[end - fBase] = n;
+		fDays = Arrays.copyOf(days, n);
+		}
+
+	/** @return the calendar whose holidays the table skips */
+	public MarketCalendar calendar() { return fCalendar; }
+	public int firstYear() { return fFirstYear; }
+	public int lastYear()  { return fLastYear; }
+	/** @return the number of market days in the whole span */
+	public int size()      { return fDays.length; }
+
+	public boolean covers(int yyyymmdd)
+		{
+		int year = Ymd.year(yyyymmdd);
+		return year >= fFirstYear && year <= fLastYear;
+		}
+
+	private boolean coversAround(int yyyymmdd)
+		{
+		int year = Ymd.year(yyyymmdd);
+		return year > fFirstYear && year < fLastYear;
+		}
+
+	/** @return the number of market days in the span before yyyymmdd */
+	public int rank(int yyyymmdd)
+		{
+		int offset = Ymd.toEpochDay(yyyymmdd) - fBase;
+		if ( offset < 0 || offset >= fRank.length )
+			throw new IllegalArgumentException(yyyymmdd + " is outside "
+			                                   + fFirstYear + "-" + fLastYear);
+		return fRank[offset];
+		}
+
+	/** @return the nth market day of the span, 0 based */
+	public int day(int n) { return fDays[n]; }
+
+	public boolean isMarketDay(int yyyymmdd)
+		{
+		int n = rank(yyyymmdd);
+		return n < fDays.length && fDays[n] == yyyymmdd;
+		}
+
+	/** @return the first market day after yyyymmdd */
+	public int next(int yyyymmdd)
+		{
+		int n = rank(yyyymmdd);
+		if ( n < fDays.length && fDays[n] == yyyymmdd ) ++n;
+		return fDays[check(n)];
+		}
+
+	/** @return the last market day before yyyymmdd */
+	public int prev(int yyyymmdd)
+		{
+		return fDays[check(rank(yyyymmdd) - 1)];
+		}
+
+	/** @return yyyymmdd if a market day, otherwise the next one */
+	public int onOrAfter(int yyyymmdd)
+		{
+		return fDays[check(rank(yyyymmdd))];
+		}
+
+	/** @return the number of market days from the first date through the last */
+	public int between(int fromYmd, int toYmd)
+		{
+		if ( toYmd < fromYmd )
+			return 0;
+		return rank(Ymd.addDays(toYmd, 1)) - rank(fromYmd);
+		}
+
+	/** @return the market days from the first date through the last */
+	public int[] list(int fromYmd, int toYmd)
+		{
+		if ( toYmd < fromYmd )
+			return new int[0];
+		return Arrays.copyOfRange(fDays, rank(fromYmd), rank(Ymd.addDays(toYmd, 1)));
+		}
+
+	private int check(int n)
+		{
+		if ( n < 0 || n >= fDays.length )
+			throw new IllegalArgumentException("no market day in "
+			                                   + fFirstYear + "-" + fLastYear);
+		return n;
+		}
+	}
@@ -0,0 +1,106 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)Ymd.java 1.00 20261018
+*
+* Ymd: Calendar arithmetic on dates held as int yyyymmdd, done with
+* integer math rather than a Calendar, so it allocates nothing and is
+* safe from any thread. Days are counted from 1/1/1970 (epoch day 0)
+* in the proleptic Gregorian calendar; day of week numbers follow
+* Calendar, so SBDate.dayName[dayOfWeek(ymd)] works.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.Calendar;
+
+final class Ymd
+	{
+	private Ymd() {}
+
+	static int year(int ymd)  { return ymd / 10000; }
+	static int month(int ymd) { return (ymd / 100) % 100; } // 1 - 12
+	static int dom(int ymd)   { return ymd % 100; }
+	static int of(int year, int month, int dom) { return 10000 * year + 100 * month + dom; }
+
+	/** @return days since 1/1/1970 (after H. Hinnant's days_from_civil) */
+	static int toEpochDay(int ymd)
+		{
+		int y = year(ymd);
+		int m = month(ymd);
+		int d = dom(ymd);
+		if ( m <= 2 ) --y;
+		int era = Math.floorDiv(y, 400);
+		int yoe = y - era * 400;                                     // [0, 399]
+		int doy = (153 * (m + ((m > 2) ? -3 : 9)) + 2) / 5 + d - 1;  // [0, 365]
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;             // [0, 146096]
+		return era * 146097 + doe - 719468;
+		}
+
+	/** @return the yyyymmdd of an epoch day */
+	static int fromEpochDay(int epochDay)
+		{
+		int z = epochDay + 719468;
+		int era = Math.floorDiv(z, 146097);
+		int doe = z - era * 146097;
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int d = doy - (153 * mp + 2) / 5 + 1;
+		int m = mp + ((mp < 10) ? 3 : -9);
+		int y = yoe + era * 400 + ((m <= 2) ? 1 : 0);
+		return of(y, m, d);
+		}
+
+	/** @return Calendar.SUNDAY (1) through Calendar.SATURDAY (7) */
+	static int dayOfWeekOf(int epochDay)
+		{
+		return Math.floorMod(epochDay + 4, 7) + 1; // 1/1/1970 was a thursday
+		}
+
+	static int dayOfWeek(int ymd) { return dayOfWeekOf(toEpochDay(ymd)); }
+
+	static boolean isWeekendDay(int epochDay)
+		{
+		int dow = dayOfWeekOf(epochDay);
+		return dow == Calendar.SATURDAY || dow == Calendar.SUNDAY;
+		}
+
+	static boolean isWeekend(int ymd) { return isWeekendDay(toEpochDay(ymd)); }
+
+	static boolean isLeapYear(int year)
+		{
+		return (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+		}
+
+	static int daysInMonth(int year, int month)
+		{
+		switch (month)
+			{
+			case 2: return isLeapYear(year) ? 29 : 28;
+			case 4: case 6: case 9: case 11: return 30;
+			default: return 31;
+			}
+		}
+
+	/** @return the yyyymmdd n days after (or before, for negative n) ymd */
+	static int addDays(int ymd, int n) { return fromEpochDay(toEpochDay(ymd) + n); }
+
+	/** @return the yyyymmdd of an SBDate time, in the default time zone */
+	static int fromTime(long aTime)
+		{
+		long millis = aTime * 1000;
+		millis += java.util.TimeZone.getDefault().getOffset(millis);
+		return fromEpochDay((int)Math.floorDiv(millis, 86400000L));
+		}
+
+	/** @return the SBDate time of midnight starting yyyymmdd, in the default time zone */
+	static long toTime(int yyyymmdd)
+		{
+		java.util.TimeZone tz = java.util.TimeZone.getDefault();
+		long utc = toEpochDay(yyyymmdd) * 86400000L;
+		return (utc - tz.getOffset(utc - tz.getOffset(utc))) / 1000;
+		}
+
+	/** @return today's yyyymmdd */
+	static int today() { return fromTime(System.currentTimeMillis() / 1000); }
+	}
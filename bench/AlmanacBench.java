@@ -0,0 +1,38 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)AlmanacBench.java 1.00 20261018
+*
+* AlmanacBench: Runs the almanac benchmarks with the GC profiler, so each
+* result comes with its allocation rate (gc.alloc.rate and
+* gc.alloc.rate.norm, bytes per operation). Built with the sources of
+* com.wormtrader.almanac, the com.shanebow libraries and the JMH core and
+* annotation processor jars on the class path:
+*
+*		java -cp ... com.wormtrader.almanac.AlmanacBench
+*		java -cp ... com.wormtrader.almanac.AlmanacBench DailyDataBench -p rows=1000000
+*
+* Any arguments are JMH command line options; they replace the default
+* of running every benchmark in this directory.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public final class AlmanacBench
+	{
+	private AlmanacBench() {}
+
+	public static void main(String[] args) throws Exception
+		{
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(new CommandLineOptions(args));
+		if ( args.length == 0 )
+			options.include("com\\.wormtrader\\.almanac\\..*Bench\\.");
+		options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+		}
+	}
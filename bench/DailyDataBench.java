@@ -0,0 +1,89 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DailyDataBench.java 1.00 20261018
+*
+* DailyDataBench: Lookups and field scans of synthetic DailyData histories
+* of ten thousand to a million rows: day(long) and fetch(String) of random
+* loaded days (fixed seed), a scan of one field down the columns, the same
+* scan through the DailyData views of allDates(), and a scan of one year.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DailyDataBench
+	{
+	private static final int DATES = 1024;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int rows;
+
+	private long[] fTimes;
+	private String[] fDates;
+	private int fNext = 0;
+	private int fYearFrom;
+	private int fYearTo;
+
+	@Setup public void setup()
+		{
+		DailyData.setSource(SyntheticData.source(rows, 42L));
+		DailyData.loadAll();
+		DailyColumns data = DailyData.columns();
+		Random random = new Random(42L);
+		fTimes = new long[DATES];
+		fDates = new String[DATES];
+		for ( int i = 0; i < DATES; i++ )
+			{
+			int row = random.nextInt(data.size());
+			fTimes[i] = data.time(row);
+			fDates[i] = Integer.toString(data.yyyymmdd(row));
+			}
+		int year = Ymd.year(data.yyyymmdd(data.size() / 2));
+		fYearFrom = Ymd.of(year, 1, 1);
+		fYearTo = Ymd.of(year, 12, 31);
+		}
+
+	private int nextIndex() { return fNext++ & (DATES - 1); }
+
+	@Benchmark public DailyData dayByTime() { return DailyData.day(fTimes[nextIndex()]); }
+
+	@Benchmark public DailyData fetch() { return DailyData.fetch(fDates[nextIndex()]); }
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long scanColumn()
+		{
+		DailyColumns data = DailyData.columns();
+		long sum = 0;
+		for ( int row = 0, n = data.size(); row < n; row++ )
+			sum += data.get(row, DailyData.GAIN);
+		return sum;
+		}
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long scanViews()
+		{
+		long sum = 0;
+		for ( DailyData dd : DailyData.allDates())
+			sum += dd.get(DailyData.GAIN);
+		return sum;
+		}
+
+	@Benchmark public long scanYear()
+		{
+		DailyColumns data = DailyData.columns();
+		int[] range = data.range(fYearFrom, fYearTo);
+		long sum = 0;
+		for ( int row = range[0]; row < range[1]; row++ )
+			sum += data.get(row, DailyData.INDP);
+		return sum;
+		}
+	}
@@ -0,0 +1,68 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)DateWalkerBench.java 1.00 20261018
+*
+* DateWalkerBench: Listing and counting the market days of spans of one
+* to thirty years, and stepping to the previous and next market day from
+* dates drawn at random (with a fixed seed) across the span.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DateWalkerBench
+	{
+	private static final int LAST_YEAR = 2013;
+	private static final int DATES = 1024; // a power of two, for the mask
+
+	@Param({ "1", "10", "30" })
+	public int years;
+
+	private DateWalker fWalker;
+	private int[] fDates;
+	private String[] fDateStrings;
+	private int fNext = 0;
+
+	@Setup public void setup()
+		{
+		int from = Ymd.of(LAST_YEAR - years + 1, 1, 2);
+		int to = Ymd.of(LAST_YEAR, 12, 31);
+		fWalker = new DateWalker(Integer.toString(from), Integer.toString(to));
+		Random random = new Random(42L);
+		int fromDay = Ymd.toEpochDay(from);
+		int days = Ymd.toEpochDay(to) - fromDay;
+		fDates = new int[DATES];
+		fDateStrings = new String[DATES];
+		for ( int i = 0; i < DATES; i++ )
+			{
+			fDates[i] = Ymd.fromEpochDay(fromDay + random.nextInt(days));
+			fDateStrings[i] = Integer.toString(fDates[i]);
+			}
+		fWalker.size(); // builds the market day tables outside the timing
+		}
+
+	private int nextIndex() { return fNext++ & (DATES - 1); }
+
+	@Benchmark public List<String> list() { return fWalker.list(); }
+
+	@Benchmark public int size() { return fWalker.size(); }
+
+	@Benchmark public int prevMarketDay() { return DateWalker.prevMarketDay(fDates[nextIndex()]); }
+
+	@Benchmark public int nextMarketDay() { return DateWalker.nextMarketDay(fDates[nextIndex()]); }
+
+	@Benchmark public String nextMarketDayString()
+		{
+		return DateWalker.nextMarketDay(fDateStrings[nextIndex()]);
+		}
+	}
@@ -0,0 +1,85 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)HolidaysBench.java 1.00 20261018
+*
+* HolidaysBench: Holiday lookups on random dates (fixed seed) from 1980
+* through 2030, with the NYSE calendar loaded from a synthetic holidays
+* file, and the cost of building a calendar from the file's overrides.
+*
+* The file is written to a temporary directory, which is made the history
+* root (tw.bar.file.root) and the calendar cache (tw.almanac.cache).
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HolidaysBench
+	{
+	private static final int FIRST_YEAR = 1980;
+	private static final int LAST_YEAR = 2030;
+	private static final int DATES = 1024;
+
+	private int[] fDates;
+	private int fNext = 0;
+	private List<Holiday> fOverrides;
+
+	@Setup public void setup() throws Exception
+		{
+		File dir = Files.createTempDirectory("almanac-bench").toFile();
+		File csv = new File(dir, "holidays.csv");
+		SyntheticData.writeHolidays(csv, FIRST_YEAR, LAST_YEAR, 42L);
+		System.setProperty("tw.bar.file.root", dir.getPath());
+		System.setProperty("tw.almanac.cache", dir.getPath());
+		MarketCalendars.reload(MarketCalendars.NYSE).join();
+		Holidays.covering(Ymd.of(LAST_YEAR, 12, 31));
+
+		fOverrides = new ArrayList<Holiday>();
+		BufferedReader reader = new BufferedReader(new FileReader(csv));
+		try
+			{
+			String line;
+			while ((line = reader.readLine()) != null )
+				if ( !line.isEmpty() && Character.isDigit(line.charAt(0)))
+					fOverrides.add(new Holiday(line));
+			}
+		finally { reader.close(); }
+
+		Random random = new Random(42L);
+		int fromDay = Ymd.toEpochDay(Ymd.of(FIRST_YEAR, 1, 1));
+		int days = Ymd.toEpochDay(Ymd.of(LAST_YEAR, 12, 31)) - fromDay;
+		fDates = new int[DATES];
+		for ( int i = 0; i < DATES; i++ )
+			fDates[i] = Ymd.fromEpochDay(fromDay + random.nextInt(days));
+		}
+
+	private int nextDate() { return fDates[fNext++ & (DATES - 1)]; }
+
+	@Benchmark public boolean isHoliday() { return Holidays.isHoliday(nextDate()); }
+
+	@Benchmark public int nextHoliday() { return Holidays.nextHoliday(nextDate()); }
+
+	@Benchmark public Holiday fetch() { return Holidays.fetch(nextDate()); }
+
+	@Benchmark public boolean isMarketDay() { return Holidays.isMarketDay(nextDate()); }
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public MarketCalendar buildCalendar()
+		{
+		return new MarketCalendar(HolidayRules.NYSE, fOverrides, FIRST_YEAR, LAST_YEAR);
+		}
+	}
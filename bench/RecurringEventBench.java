@@ -0,0 +1,67 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)RecurringEventBench.java 1.00 20261018
+*
+* RecurringEventBench: The recurring events of random dates (fixed seed)
+* over spans of one to thirty years, the events of the whole span in one
+* call, and the same with a new index, so that every month is compiled.
+*
+* @version 1.00
+* 20261018 created
+*******************************************************/
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RecurringEventBench
+	{
+	private static final int LAST_YEAR = 2013;
+	private static final int DATES = 1024;
+
+	@Param({ "1", "10", "30" })
+	public int years;
+
+	private int fFrom;
+	private int fTo;
+	private int[] fDates;
+	private int fNext = 0;
+
+	@Setup public void setup()
+		{
+		fFrom = Ymd.of(LAST_YEAR - years + 1, 1, 1);
+		fTo = Ymd.of(LAST_YEAR, 12, 31);
+		Random random = new Random(42L);
+		int fromDay = Ymd.toEpochDay(fFrom);
+		int days = Ymd.toEpochDay(fTo) - fromDay + 1;
+		fDates = new int[DATES];
+		for ( int i = 0; i < DATES; i++ )
+			fDates[i] = Ymd.fromEpochDay(fromDay + random.nextInt(days));
+		RecurringEvent.eventsBetween(fFrom, fTo); // warms the month cache
+		}
+
+	@Benchmark public Vector<RecurringEvent> eventsFor()
+		{
+		return RecurringEvent.eventsFor(fDates[fNext++ & (DATES - 1)]);
+		}
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public NavigableMap<Integer, List<RecurringEvent>> eventsBetween()
+		{
+		return RecurringEvent.eventsBetween(fFrom, fTo);
+		}
+
+	@Benchmark @OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public NavigableMap<Integer, List<RecurringEvent>> eventsBetweenCold()
+		{
+		return new EventIndex(RecurringEvent.builtIn()).eventsBetween(fFrom, fTo);
+		}
+	}
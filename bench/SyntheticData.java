@@ -0,0 +1,161 @@
+package com.wormtrader.almanac;
+/********************************************************************
+* @(#)SyntheticData.java 1.00 20261018
+*
+* SyntheticData: Deterministic made-up inputs for the benchmarks, so they
+* run offline with no ODBC source: DailyData histories of any length and
+* holiday files. The same size and seed always give the same data.
+*
+* A history has one row per weekday from 19000102 on - a million rows run
+* to about the year 5730 - with the fields doing a random walk of
+* plausible size and a headline on about one day in ten. Installed with
+*
+*		DailyData.setSource(SyntheticData.source(100000, 42L));
+*		DailyData.loadAll();
+*
+* A holiday file holds the NYSE holidays the rules generate for the years
+* plus a random one-off closure or early close in about one year in four,
+* in the holidays.csv format.
+*
+* @version 1.00
+* 20261018 created
+* 20261018 fetchAfter ends at the last row rather than at Integer.MAX_VALUE
+*******************************************************/
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+
+final class SyntheticData
+	{
+	static final int FIRST_YMD = 19000102;
+	private static final String[] HEADLINES =
+		{
+		"Fed holds rates steady", "Oil jumps on supply worries", "Tech leads rally",
+		"Jobs report beats estimates", "Banks slide on earnings", "Dollar firms vs yen"
+		};
+
+	private SyntheticData() {}
+
+	/** @return rows weekdays of fields generated from seed */
+	static DailyColumns history(int rows, long seed)
+		{
+		Random random = new Random(seed);
+		DailyColumns.Builder builder = new DailyColumns.Builder(rows);
+		int[] fields = new int[DailyColumns.NUM_FIELDS];
+		fields[DailyData.CASH] = 10000000;  // $100,000.00
+		fields[DailyData.INDU] = 1000000;   // 10,000.00
+		fields[DailyData.SPX]  = 110000;
+		fields[DailyData.NCMP] = 200000;
+		fields[DailyData.R2000] = 50000;
+		fields[DailyData.VIX]  = 2000;
+		fields[DailyData.TY]   = 400;
+		fields[DailyData.EURO] = 120;
+		fields[DailyData.YEN]  = 9000;
+		int epochDay = Ymd.toEpochDay(FIRST_YMD);
+		for ( int row = 0; row < rows; row++, epochDay++ )
+			{
+			while ( Ymd.isWeekendDay(epochDay))
+				++epochDay;
+			int gain = (int)(random.nextGaussian() * 50000);
+			fields[DailyData.CASH] = Math.max(0, fields[DailyData.CASH] + gain);
+			fields[DailyData.GAIN] = gain;
+			fields[DailyData.CG]   = random.nextInt(4);
+			fields[DailyData.MTI]  = 50 + random.nextInt(200);
+			int indp = (int)(random.nextGaussian() * 10000);
+			fields[DailyData.INDU] = Math.max(100, fields[DailyData.INDU] + indp);
+			fields[DailyData.INDP] = indp;
+			walk(random, fields, DailyData.SPX,  1000);
+			walk(random, fields, DailyData.NCMP, 2000);
+			walk(random, fields, DailyData.R2000, 500);
+			walk(random, fields, DailyData.VIX,   100);
+			walk(random, fields, DailyData.TY,     5);
+			walk(random, fields, DailyData.EURO,   1);
+			walk(random, fields, DailyData.YEN,   50);
+			for ( byte f = DailyData.ANYSE; f <= DailyData.VNASD; f++ )
+				fields[f] = random.nextInt(3000);
+			String notes = (random.nextInt(10) == 0)
+			             ? HEADLINES[random.nextInt(HEADLINES.length)] : "";
+			int ymd = Ymd.fromEpochDay(epochDay);
+			builder.add(Ymd.toTime(ymd), ymd, fields, notes);
+			}
+		return builder.build();
+		}
+
+	private static void walk(Random random, int[] fields, byte field, int step)
+		{
+		fields[field] = Math.max(1, fields[field] + (int)(random.nextGaussian() * step));
+		}
+
+	/** @return a source that answers from a history of rows generated from seed */
+	static DailyDataSource source(int rows, long seed)
+		{
+		final DailyColumns data = history(rows, seed);
+		return new DailyDataSource()
+			{
+			public DailyColumns loadAll() { return data; }
+			public DailyColumns fetch(String yyyymmdd)
+				{
+				int row = data.indexOf(Integer.parseInt(yyyymmdd));
+				return (row < 0) ? null : slice(data, row, row + 1);
+				}
+			public DailyColumns last()
+				{
+				return (data.size() == 0) ? null : slice(data, data.size() - 1, data.size());
+				}
+			public DailyColumns fetchAfter(int yyyymmdd)
+				{
+				int first = data.range(yyyymmdd + 1, yyyymmdd + 1)[0]; // first row after
+				return slice(data, first, data.size());
+				}
+			};
+		}
+
+	private static DailyColumns slice(DailyColumns data, int from, int to)
+		{
+		DailyColumns.Builder builder = new DailyColumns.Builder(to - from);
+		int[] fields = new int[DailyColumns.NUM_FIELDS];
+		for ( int row = from; row < to; row++ )
+			{
+			for ( byte f = 0; f < DailyColumns.NUM_FIELDS; f++ )
+				fields[f] = data.get(row, f);
+			builder.add(data.time(row), data.yyyymmdd(row), fields, data.notes(row));
+			}
+		return builder.build();
+		}
+
+	/**
+	* Writes the holidays of the years, with random extra closures drawn
+	* from seed, as a holidays.csv
+	* @return the number of lines written
+	*/
+	static int writeHolidays(File file, int firstYear, int lastYear, long seed)
+		throws Exception
+		{
+		Random random = new Random(seed);
+		int lines = 0;
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try
+			{
+			out.println("# synthetic holidays " + firstYear + "-" + lastYear + " seed " + seed);
+			for ( int year = firstYear; year <= lastYear; year++ )
+				{
+				for ( Holiday holiday : HolidayRules.NYSE.holidays(year))
+					{
+					out.println(holiday.toString());
+					++lines;
+					}
+				if ( random.nextInt(4) != 0 )
+					continue;
+				int ymd = Ymd.addDays(Ymd.of(year, 1, 1), random.nextInt(365));
+				if ( Ymd.isWeekend(ymd))
+					continue;
+				out.println(random.nextBoolean() ? ymd + ",Synthetic closure"
+				                                 : ymd + ",Synthetic early close,13:00");
+				++lines;
+				}
+			}
+		finally { out.close(); }
+		return lines;
+		}
+	}